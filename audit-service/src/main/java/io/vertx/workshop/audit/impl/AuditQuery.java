@@ -0,0 +1,108 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.reactivex.core.MultiMap;
+
+/**
+ * A page of the audited operations, newest first.
+ * <p>
+ * The pages are selected by keyset: only the operations whose id is lower than {@code before} (the cursor returned
+ * with the previous page) are returned. The operations can be filtered by {@code company}, {@code action} and date
+ * range ({@code from} inclusive, {@code to} exclusive, in ms since the epoch).
+ * </p>
+ */
+final class AuditQuery {
+
+    static final int DEFAULT_LIMIT = 10;
+    static final int MAX_LIMIT = 100;
+
+    final int limit;
+    final long before;
+    final String company;
+    final String action;
+    final long from;
+    final long to;
+
+    AuditQuery(int limit, long before, String company, String action, long from, long to) {
+        this.limit = limit;
+        this.before = before;
+        this.company = company;
+        this.action = action;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Reads the query from the request parameters.
+     *
+     * @param params the parameters
+     * @return the query
+     * @throws IllegalArgumentException if a parameter is invalid
+     */
+    static AuditQuery fromParams(MultiMap params) {
+        int limit = (int) parse(params.get("limit"), DEFAULT_LIMIT);
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("The limit must be between 1 and " + MAX_LIMIT);
+        }
+        return new AuditQuery(limit,
+            parse(params.get("before"), Long.MAX_VALUE),
+            params.get("company"),
+            params.get("action") == null ? null : params.get("action").toUpperCase(),
+            parse(params.get("from"), Long.MIN_VALUE),
+            parse(params.get("to"), Long.MAX_VALUE));
+    }
+
+    private static long parse(String value, long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + value);
+        }
+    }
+
+    /**
+     * Builds the condition selecting the operations of the page lower than the given id in the database.
+     *
+     * @param before the exclusive upper bound of the ids
+     * @param params the parameters of the statement, the condition parameters are added
+     * @return the condition
+     */
+    String where(long before, JsonArray params) {
+        StringBuilder where = new StringBuilder("id < ?");
+        params.add(before);
+        if (company != null) {
+            where.append(" AND company = ?");
+            params.add(company);
+        }
+        if (action != null) {
+            where.append(" AND action = ?");
+            params.add(action);
+        }
+        if (from != Long.MIN_VALUE) {
+            where.append(" AND traded_at >= ?");
+            params.add(from);
+        }
+        if (to != Long.MAX_VALUE) {
+            where.append(" AND traded_at < ?");
+            params.add(to);
+        }
+        return where.toString();
+    }
+
+    boolean matches(AuditRecord record) {
+        if (record.id() >= before) {
+            return false;
+        }
+        if (company != null && !company.equals(record.company())) {
+            return false;
+        }
+        if (action != null && !action.equals(record.action())) {
+            return false;
+        }
+        long date = record.date();
+        return date >= from && date < to;
+    }
+}
@@ -0,0 +1,101 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * An audited operation, identified by the id assigned by the audit service.
+ * <p>
+ * The operation is stored in the typed columns of {@code AUDIT_OPERATION} (see {@link AuditSchema}), and served as
+ * Json, encoded once.
+ * </p>
+ */
+final class AuditRecord {
+
+    /**
+     * The columns of an operation, in the order of {@link #toParams()} and {@link #fromRow(JsonArray)}.
+     */
+    static final String COLUMNS =
+        "id, account, account_sequence, action, company, symbol, amount, owned, bid, ask, traded_at";
+
+    private final long id;
+    private final JsonObject operation;
+    private String encoded;
+
+    AuditRecord(long id, JsonObject operation) {
+        this.id = id;
+        this.operation = operation.put("id", id);
+    }
+
+    /**
+     * Reads an operation from a row of the {@link #COLUMNS}.
+     *
+     * @param row the row
+     * @return the operation
+     */
+    static AuditRecord fromRow(JsonArray row) {
+        return new AuditRecord(row.getLong(0), new JsonObject()
+            .put("account", row.getString(1))
+            .put("sequence", row.getLong(2))
+            .put("action", row.getString(3))
+            .put("quote", new JsonObject()
+                .put("name", row.getString(4))
+                .put("symbol", row.getString(5))
+                .put("bid", row.getDouble(8))
+                .put("ask", row.getDouble(9)))
+            .put("amount", row.getInteger(6))
+            .put("owned", row.getInteger(7))
+            .put("date", row.getLong(10)));
+    }
+
+    /**
+     * @return the values of the {@link #COLUMNS}
+     */
+    JsonArray toParams() {
+        JsonObject quote = operation.getJsonObject("quote", new JsonObject());
+        String company = quote.getString("name", "");
+        return new JsonArray()
+            .add(id)
+            .add(operation.getString("account", ""))
+            .add(operation.getLong("sequence", 0L))
+            .add(action())
+            .add(company)
+            .add(quote.getString("symbol", company))
+            .add(operation.getInteger("amount", 0))
+            .add(operation.getInteger("owned", 0))
+            .add(quote.getDouble("bid", 0.0))
+            .add(quote.getDouble("ask", 0.0))
+            .add(date());
+    }
+
+    long id() {
+        return id;
+    }
+
+    JsonObject operation() {
+        return operation;
+    }
+
+    /**
+     * @return the encoded operation, encoded once
+     */
+    String encoded() {
+        if (encoded == null) {
+            encoded = operation.encode();
+        }
+        return encoded;
+    }
+
+    String action() {
+        return operation.getString("action", "").toUpperCase();
+    }
+
+    String company() {
+        JsonObject quote = operation.getJsonObject("quote");
+        return quote == null ? null : quote.getString("name");
+    }
+
+    long date() {
+        return operation.getLong("date", 0L);
+    }
+}
@@ -0,0 +1,104 @@
+package io.vertx.workshop.audit.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+
+/**
+ * The schema of the audit database, migrated to the {@link #VERSION latest version} by the {@link AuditStore} when
+ * the service starts.
+ * <p>
+ * The applied version is recorded in {@code AUDIT_SCHEMA_VERSION}, and only the missing migrations are applied, so
+ * the stored operations are kept across restarts. The migrations and the recording of their version are applied in a
+ * single transaction, holding a lock on the single row of {@code AUDIT_SCHEMA_LOCK}, so instances starting together
+ * migrate the schema once. The row is locked with {@code SELECT ... FOR UPDATE}, understood by both PostgreSQL and H2.
+ * The operations are stored in {@code AUDIT_OPERATION}, one typed column per field:
+ * </p>
+ * <ul>
+ * <li>{@code id}: the id assigned by the audit service (primary key)</li>
+ * <li>{@code account}, {@code account_sequence}: the account and its operation sequence number</li>
+ * <li>{@code action}: {@code BUY} or {@code SELL}</li>
+ * <li>{@code company}, {@code symbol}, {@code bid}, {@code ask}: the quote of the operation</li>
+ * <li>{@code amount}, {@code owned}: the traded and the resulting number of shares</li>
+ * <li>{@code traded_at}: the date of the operation, in ms since the epoch</li>
+ * </ul>
+ * The pages filtered by company or action, and the aggregates over a date range are served by indexes.
+ */
+final class AuditSchema {
+
+    /**
+     * The latest version of the schema.
+     */
+    static final int VERSION = 2;
+
+    /**
+     * The statement reading the current version, {@code null} if none.
+     */
+    static final String SELECT_VERSION = "SELECT MAX(version) FROM AUDIT_SCHEMA_VERSION";
+
+    private static final String CREATE_VERSION_TABLE =
+        "CREATE TABLE IF NOT EXISTS AUDIT_SCHEMA_VERSION (version INT NOT NULL)";
+    // The lock row is created with its table, so there is no insert to race on
+    private static final String CREATE_LOCK_TABLE = "CREATE TABLE IF NOT EXISTS AUDIT_SCHEMA_LOCK AS SELECT 0 AS id";
+    private static final String LOCK = "SELECT id FROM AUDIT_SCHEMA_LOCK FOR UPDATE";
+    private static final String INSERT_VERSION = "INSERT INTO AUDIT_SCHEMA_VERSION (version) VALUES (";
+
+    /**
+     * The migrations, the statements of version {@code n} being at index {@code n - 1}.
+     */
+    private static final List<List<String>> MIGRATIONS = Arrays.asList(
+        // 1: the typed operations and their indexes
+        Arrays.asList(
+            "CREATE TABLE IF NOT EXISTS AUDIT_OPERATION ("
+                + "id BIGINT PRIMARY KEY, "
+                + "account VARCHAR(255) NOT NULL, "
+                + "account_sequence BIGINT NOT NULL, "
+                + "action VARCHAR(8) NOT NULL, "
+                + "company VARCHAR(255) NOT NULL, "
+                + "symbol VARCHAR(64) NOT NULL, "
+                + "amount INT NOT NULL, "
+                + "owned INT NOT NULL, "
+                + "bid DOUBLE PRECISION NOT NULL, "
+                + "ask DOUBLE PRECISION NOT NULL, "
+                + "traded_at BIGINT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS AUDIT_OPERATION_COMPANY ON AUDIT_OPERATION (company, id)",
+            "CREATE INDEX IF NOT EXISTS AUDIT_OPERATION_ACTION ON AUDIT_OPERATION (action, id)",
+            "CREATE INDEX IF NOT EXISTS AUDIT_OPERATION_TRADED_AT ON AUDIT_OPERATION (traded_at)",
+            "CREATE INDEX IF NOT EXISTS AUDIT_OPERATION_SYMBOL_TRADED_AT ON AUDIT_OPERATION (symbol, traded_at)"),
+        // 2: the former table of Json operations, it was dropped at every start so it holds no durable data
+        Arrays.asList(
+            "DROP TABLE IF EXISTS AUDIT")
+    );
+
+    private AuditSchema() {
+        // Avoid direct instantiation
+    }
+
+    /**
+     * Applies the missing migrations. The version is read again once the lock row is held, so a migration
+     * applied meanwhile by another instance is not applied twice.
+     *
+     * @param execute     executes a statement, without parameters
+     * @param version     reads the current version, once the version table exists
+     * @param transaction runs the given statements in a transaction, on the connection of {@code execute}
+     * @return a completable completed once the schema is up to date
+     */
+    static Completable migrate(Function<String, Completable> execute, Single<Integer> version,
+                               Function<Completable, Completable> transaction) {
+        return execute.apply(CREATE_VERSION_TABLE)
+            .andThen(execute.apply(CREATE_LOCK_TABLE))
+            .andThen(transaction.apply(execute.apply(LOCK)
+                .andThen(version)
+                .flatMapCompletable(current -> Observable.range(current + 1, Math.max(0, VERSION - current))
+                    .concatMapCompletable(next -> {
+                        System.out.println("Migrating the audit schema to version " + next);
+                        return Observable.fromIterable(MIGRATIONS.get(next - 1))
+                            .concatMapCompletable(execute::apply)
+                            .andThen(execute.apply(INSERT_VERSION + next + ")"));
+                    }))));
+    }
+}
@@ -0,0 +1,413 @@
+package io.vertx.workshop.audit.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A write-ahead spool of the audited operations, so they survive database outages and restarts.
+ * <p>
+ * The operations are appended to memory-mapped segments ({@code spool-<first id>.log}) before being stored in the
+ * database, and read back by the writer in append order. Each record holds the id, the append time and the encoded
+ * operation, and is checksummed. A segment is rolled when full, and deleted once all its operations are stored.
+ * </p>
+ * <p>
+ * The stored operations are acknowledged by batch, possibly out of order. The checkpoint file holds the id of the last
+ * operation such that it and all the previous ones are stored: on restart, only the operations appended after it are
+ * read again. The operations stored after the checkpoint may be stored twice, the store ignores the duplicates. The
+ * segments and the checkpoint are forced to the storage device by {@link #sync(Handler)}, on a worker thread.
+ * </p>
+ * This class is not thread safe, it is meant to be used from the event loop of the audit verticle.
+ */
+final class AuditSpool {
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String CHECKPOINT = "checkpoint";
+
+    /**
+     * The length, id, append time and checksum around the encoded operation.
+     */
+    private static final int OVERHEAD = 4 + 8 + 8 + 4;
+
+    private final Vertx vertx;
+    private final File directory;
+    private final int segmentSize;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * The segments, oldest first. The last one is the segment being written.
+     */
+    private final List<Segment> segments = new ArrayList<>();
+    private int readSegment;
+    private int readPosition;
+
+    /**
+     * The batches read and not stored yet, in read order.
+     */
+    private final ArrayDeque<Batch> reading = new ArrayDeque<>();
+
+    private long lastId;
+    private long checkpoint;
+    private long pending;
+    private long unread;
+    private long size;
+
+    private Set<MappedByteBuffer> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+    private List<File> obsolete = new ArrayList<>();
+
+    private static final class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private long last;
+
+        private Segment(File file, MappedByteBuffer buffer, long last) {
+            this.file = file;
+            this.buffer = buffer;
+            this.last = last;
+        }
+    }
+
+    /**
+     * A batch of spooled operations, read in append order.
+     */
+    static final class Batch {
+        private final List<AuditRecord> records;
+        private final long last;
+        private boolean stored;
+
+        private Batch(List<AuditRecord> records) {
+            this.records = records;
+            this.last = records.get(records.size() - 1).id();
+        }
+
+        List<AuditRecord> records() {
+            return records;
+        }
+    }
+
+    private AuditSpool(Vertx vertx, File directory, int segmentSize) {
+        this.vertx = vertx;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the spool stored in the given directory, the operations appended after the checkpoint are read again.
+     * This method blocks.
+     *
+     * @param vertx       the vert.x instance, used to run the blocking operations
+     * @param directory   the spool directory
+     * @param segmentSize the size of a segment, in bytes
+     * @return the spool
+     */
+    static AuditSpool open(Vertx vertx, File directory, int segmentSize) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Cannot create the spool directory " + directory);
+        }
+        AuditSpool spool = new AuditSpool(vertx, directory, segmentSize);
+        try {
+            spool.recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return spool;
+    }
+
+    private void recover() throws IOException {
+        File checkpointFile = new File(directory, CHECKPOINT);
+        if (checkpointFile.isFile()) {
+            checkpoint = Long.parseLong(new String(Files.readAllBytes(checkpointFile.toPath()),
+                StandardCharsets.UTF_8).trim());
+        }
+        lastId = checkpoint;
+        boolean positioned = false;
+        File[] files = list(directory);
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            MappedByteBuffer buffer;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            }
+            // Find the end of the valid records, and the first one to store again
+            long last = 0;
+            int first = -1;
+            while (true) {
+                int start = buffer.position();
+                AuditRecord record = read(buffer);
+                if (record == null) {
+                    ((Buffer) buffer).position(start);
+                    break;
+                }
+                last = record.id();
+                if (last > checkpoint) {
+                    pending++;
+                    unread++;
+                    if (first < 0) {
+                        first = start;
+                    }
+                }
+            }
+            if (last <= checkpoint && i < files.length - 1) {
+                // Stored, but not deleted before the restart
+                Files.delete(file.toPath());
+                continue;
+            }
+            lastId = Math.max(lastId, last);
+            segments.add(new Segment(file, buffer, last));
+            size += buffer.position();
+            if (!positioned && first >= 0) {
+                readSegment = segments.size() - 1;
+                readPosition = first;
+                positioned = true;
+            }
+        }
+        if (segments.isEmpty()) {
+            roll(0);
+        }
+        if (!positioned) {
+            // Everything is stored: read from the end of the last segment
+            readSegment = segments.size() - 1;
+            readPosition = current().buffer.position();
+        }
+    }
+
+    /**
+     * @return the id of the last appended operation
+     */
+    long lastId() {
+        return lastId;
+    }
+
+    /**
+     * @return the number of operations appended and not stored yet
+     */
+    long pending() {
+        return pending;
+    }
+
+    /**
+     * @return the number of operations appended and not read yet
+     */
+    long unread() {
+        return unread;
+    }
+
+    /**
+     * @return the size of the spool, in bytes
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return the time since the next operation to read was appended, in ms, 0 if all the operations have been read
+     */
+    long lag() {
+        Segment segment = segments.get(readSegment);
+        if (readPosition >= segment.buffer.position()) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - segment.buffer.getLong(readPosition + 4 + 8));
+    }
+
+    private Segment current() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Appends an operation.
+     *
+     * @param record the operation
+     */
+    void append(AuditRecord record) {
+        byte[] operation = record.encoded().getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 8 + operation.length;
+        MappedByteBuffer buffer = current().buffer;
+        if (buffer.remaining() < OVERHEAD + operation.length + 4) {
+            // Keep the trailing zero length marking the end of the segment
+            roll(OVERHEAD + operation.length + 4);
+            buffer = current().buffer;
+        }
+        int start = buffer.position() + 4;
+        buffer.putInt(length)
+            .putLong(record.id())
+            .putLong(System.currentTimeMillis())
+            .put(operation);
+        buffer.putInt(checksum(buffer, start, length));
+        current().last = record.id();
+        lastId = record.id();
+        pending++;
+        unread++;
+        size += OVERHEAD + operation.length;
+        dirty.add(buffer);
+    }
+
+    /**
+     * Reads the next operations, in append order. The batch must be {@link #stored(Batch) acknowledged} once stored.
+     *
+     * @param max the maximum number of operations
+     * @return the batch, {@code null} if all the operations have been read
+     */
+    Batch read(int max) {
+        List<AuditRecord> records = new ArrayList<>(Math.min(max, 256));
+        while (records.size() < max) {
+            Segment segment = segments.get(readSegment);
+            ByteBuffer buffer = segment.buffer.duplicate();
+            ((Buffer) buffer).limit(segment.buffer.position()).position(readPosition);
+            AuditRecord record = read(buffer);
+            if (record != null) {
+                records.add(record);
+                readPosition = buffer.position();
+            } else if (readSegment < segments.size() - 1) {
+                readSegment++;
+                readPosition = 0;
+            } else {
+                break;
+            }
+        }
+        if (records.isEmpty()) {
+            return null;
+        }
+        unread -= records.size();
+        Batch batch = new Batch(records);
+        reading.add(batch);
+        return batch;
+    }
+
+    /**
+     * Acknowledges a stored batch. The checkpoint moves forward when all the previous batches are stored, and the
+     * segments it covers are released.
+     *
+     * @param batch the batch
+     */
+    void stored(Batch batch) {
+        batch.stored = true;
+        pending -= batch.records.size();
+        while (!reading.isEmpty() && reading.peek().stored) {
+            checkpoint = reading.poll().last;
+        }
+        while (segments.size() > 1 && readSegment > 0 && segments.get(0).last <= checkpoint) {
+            Segment segment = segments.remove(0);
+            readSegment--;
+            size -= segment.buffer.position();
+            obsolete.add(segment.file);
+        }
+    }
+
+    /**
+     * Forces the appended operations to the storage device, writes the checkpoint and deletes the released segments,
+     * on a worker thread.
+     *
+     * @param done called once done
+     */
+    void sync(Handler<AsyncResult<Void>> done) {
+        Set<MappedByteBuffer> buffers = dirty;
+        List<File> files = obsolete;
+        long covered = checkpoint;
+        dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+        obsolete = new ArrayList<>();
+        vertx.<Void>executeBlocking(future -> {
+            try {
+                for (MappedByteBuffer buffer : buffers) {
+                    buffer.force();
+                }
+                writeCheckpoint(covered);
+                for (File file : files) {
+                    Files.deleteIfExists(file.toPath());
+                }
+                future.complete();
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, true, done);
+    }
+
+    private void writeCheckpoint(long covered) throws IOException {
+        File tmp = new File(directory, CHECKPOINT + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(Long.toString(covered).getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), new File(directory, CHECKPOINT).toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Rolls to a new segment. The segment creation blocks, but only happens once per segment.
+     */
+    private void roll(int minSize) {
+        File file = new File(directory, String.format("%s%020d.log", SEGMENT_PREFIX, lastId + 1));
+        int length = Math.max(segmentSize, minSize);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+            segments.add(new Segment(file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length), lastId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int checksum(ByteBuffer buffer, int start, int length) {
+        crc.reset();
+        ByteBuffer payload = buffer.duplicate();
+        // Through Buffer, the ByteBuffer overloads of Java 9+ do not exist on the Java 8 runtime
+        ((Buffer) payload).position(start).limit(start + length);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads the record at the position of the buffer, returns {@code null} at the end of the segment or on a torn
+     * record.
+     */
+    private AuditRecord read(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int start = buffer.position();
+        int length = buffer.getInt();
+        if (length < 16 || buffer.remaining() < length + 4
+            || buffer.getInt(start + 4 + length) != checksum(buffer, start + 4, length)) {
+            ((Buffer) buffer).position(start);
+            return null;
+        }
+        long id = buffer.getLong();
+        buffer.getLong();
+        byte[] operation = new byte[length - 16];
+        buffer.get(operation);
+        buffer.getInt();
+        return new AuditRecord(id, new JsonObject(new String(operation, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Lists the segments, in id order.
+     */
+    private static File[] list(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+}
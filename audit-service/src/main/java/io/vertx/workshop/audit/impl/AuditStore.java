@@ -0,0 +1,149 @@
+package io.vertx.workshop.audit.impl;
+
+import java.util.List;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * The storage of the audited operations, in the schema described by {@link AuditSchema}.
+ * <p>
+ * Two implementations are available, selected by the {@code store} configuration of the audit service:
+ * {@link JdbcAuditStore} ({@code jdbc}, the default) using the JDBC client and the Postgres JDBC driver, and
+ * {@link PgAuditStore} ({@code pg}) using the non-blocking Postgres client.
+ * </p>
+ * The statements use {@code ?} placeholders. The insertion ignores the operations already stored, as the operations
+ * spooled after the last checkpoint are inserted again on restart (see {@link AuditSpool}).
+ */
+interface AuditStore {
+
+    String INSERT_STATEMENT = "INSERT INTO AUDIT_OPERATION (" + AuditRecord.COLUMNS
+        + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    String SELECT_MAX_ID_STATEMENT = "SELECT MAX(id) FROM AUDIT_OPERATION";
+
+    String VOLUMES_STATEMENT = "SELECT symbol, bucket, COUNT(*), "
+        + "SUM(CASE WHEN action = 'BUY' THEN amount ELSE 0 END), "
+        + "SUM(CASE WHEN action = 'SELL' THEN amount ELSE 0 END) "
+        + "FROM (SELECT symbol, action, amount, traded_at / 60000 AS bucket FROM AUDIT_OPERATION "
+        + "WHERE traded_at >= ? AND traded_at < ?%s) AS operations "
+        + "GROUP BY symbol, bucket ORDER BY bucket, symbol";
+
+    /**
+     * Migrates the schema.
+     *
+     * @return a single completed with the highest stored id, 0 if none
+     */
+    Single<Long> initialize();
+
+    /**
+     * Inserts a batch of operations.
+     *
+     * @param records the operations
+     * @return a completable completed once the operations are stored
+     */
+    Completable insert(List<AuditRecord> records);
+
+    /**
+     * Reads the stored operations of a page, newest first.
+     *
+     * @param query  the query, giving the filters
+     * @param before the exclusive upper bound of the ids
+     * @param limit  the maximum number of operations
+     * @return the operations
+     */
+    Single<List<AuditRecord>> page(AuditQuery query, long before, int limit);
+
+    /**
+     * Streams the stored operations selected by the filters of the given query, oldest first. The operations are read
+     * from a database cursor, {@code fetchSize} rows at a time, as requested by the subscriber.
+     *
+     * @param query     the query, giving the filters and the exclusive upper bound of the ids
+     * @param fetchSize the number of rows fetched at a time
+     * @return the operations
+     */
+    Flowable<AuditRecord> export(AuditQuery query, int fetchSize);
+
+    /**
+     * Aggregates the operations per symbol and per minute.
+     *
+     * @param from   the lower bound of the date range, inclusive
+     * @param to     the upper bound of the date range, exclusive
+     * @param symbol the symbol, {@code null} for all the symbols
+     * @return the volumes ({@code symbol}, {@code minute}, {@code operations}, {@code bought}, {@code sold})
+     */
+    Single<JsonArray> volumes(long from, long to, String symbol);
+
+    /**
+     * Closes the store.
+     */
+    void close();
+
+    /**
+     * Creates the query reading the page of the given query.
+     *
+     * @param query  the query
+     * @param before the exclusive upper bound of the ids
+     * @param limit  the maximum number of operations
+     * @param params the parameters of the statement, filled
+     * @return the statement
+     */
+    static String pageStatement(AuditQuery query, long before, int limit, JsonArray params) {
+        String where = query.where(before, params);
+        params.add((long) limit);
+        return "SELECT " + AuditRecord.COLUMNS + " FROM AUDIT_OPERATION WHERE " + where
+            + " ORDER BY id DESC LIMIT ?";
+    }
+
+    /**
+     * Creates the query reading the operations of the export of the given query.
+     *
+     * @param query  the query
+     * @param params the parameters of the statement, filled
+     * @return the statement
+     */
+    static String exportStatement(AuditQuery query, JsonArray params) {
+        return "SELECT " + AuditRecord.COLUMNS + " FROM AUDIT_OPERATION WHERE " + query.where(query.before, params)
+            + " ORDER BY id";
+    }
+
+    /**
+     * Creates the query aggregating the volumes.
+     *
+     * @param from   the lower bound of the date range, inclusive
+     * @param to     the upper bound of the date range, exclusive
+     * @param symbol the symbol, {@code null} for all the symbols
+     * @param params the parameters of the statement, filled
+     * @return the statement
+     */
+    static String volumesStatement(long from, long to, String symbol, JsonArray params) {
+        params.add(from).add(to);
+        if (symbol == null) {
+            return String.format(VOLUMES_STATEMENT, "");
+        }
+        params.add(symbol);
+        return String.format(VOLUMES_STATEMENT, " AND symbol = ?");
+    }
+
+    /**
+     * Creates the Json representation of a row of the volumes statement.
+     *
+     * @param symbol     the symbol
+     * @param bucket     the minute, in minutes since the epoch
+     * @param operations the number of operations
+     * @param bought     the number of bought shares
+     * @param sold       the number of sold shares
+     * @return the volume
+     */
+    static JsonObject volume(String symbol, long bucket, long operations, long bought, long sold) {
+        return new JsonObject()
+            .put("symbol", symbol)
+            .put("minute", bucket * 60000L)
+            .put("operations", operations)
+            .put("bought", bought)
+            .put("sold", sold);
+    }
+}
@@ -2,48 +2,53 @@ package io.vertx.workshop.audit.impl;
 
 import io.reactivex.Single;
 import io.vertx.core.Future;
-import io.vertx.core.json.Json;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.sql.ResultSet;
-import io.vertx.ext.sql.UpdateResult;
 import io.vertx.reactivex.core.AbstractVerticle;
+import io.vertx.reactivex.core.buffer.Buffer;
 import io.vertx.reactivex.core.eventbus.MessageConsumer;
 import io.vertx.reactivex.core.http.HttpServer;
-import io.vertx.reactivex.ext.jdbc.JDBCClient;
-import io.vertx.reactivex.ext.sql.SQLConnection;
+import io.vertx.reactivex.core.http.HttpServerResponse;
 import io.vertx.reactivex.ext.web.Router;
 import io.vertx.reactivex.ext.web.RoutingContext;
 import io.vertx.reactivex.servicediscovery.ServiceDiscovery;
 import io.vertx.reactivex.servicediscovery.types.JDBCDataSource;
 import io.vertx.servicediscovery.Record;
 import io.vertx.servicediscovery.types.HttpEndpoint;
+import io.vertx.workshop.common.Metrics;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
+/**
+ * The audit service, storing the operations published on the {@code portfolio} address.
+ * <p>
+ * The operations are stored by an {@link AuditStore}: by default ({@code store} = {@code jdbc}) the JDBC client
+ * retrieved from the {@code audit-database} service, configured by {@code database} or the environment. With
+ * {@code store} = {@code pg}, the non-blocking Postgres client configured by {@code pg} is used instead.
+ * </p>
+ * <p>
+ * The operations are first appended to a local {@link AuditSpool}, configured by {@code spool}, and drained into the
+ * store by the {@link AuditWriter}: they are kept while the database is unavailable, and across restarts.
+ * </p>
+ */
 public class AuditVerticle extends AbstractVerticle {
 
-    private static final String DROP_STATEMENT = "DROP TABLE IF EXISTS AUDIT";
-    private static final String CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS AUDIT (id SERIAL PRIMARY KEY, operation varchar(250) NOT NULL)";
-    private static final String INSERT_STATEMENT = "INSERT INTO AUDIT (operation) VALUES (?)";
-    private static final String SELECT_STATEMENT = "SELECT * FROM AUDIT ORDER BY ID DESC LIMIT 10";
+    private static final int EXPORT_CHUNK = 64;
 
-    private JDBCClient jdbc;
+    private AuditStore store;
+    private AuditWriter writer;
+    private OperationCache cache;
     private boolean ready;  
 
     @Override
     public void start(Future<Void> future) {
         ServiceDiscovery.create(vertx, discovery -> {
 
-            Single<JDBCClient> jdbc = JDBCDataSource.rxGetJDBCClient(discovery,
-                svc -> svc.getName().equals("audit-database"),
-                getDatabaseConfiguration()
-            ).doOnSuccess(jdbcClient -> this.jdbc = jdbcClient);
-
-            Single<JDBCClient> databaseReady = jdbc
-                .flatMap(client -> initializeDatabase(client, true));
+            Single<Long> databaseReady = createTheStore(discovery)
+                .doOnSuccess(auditStore -> this.store = auditStore)
+                .flatMap(AuditStore::initialize);
+            Single<AuditSpool> spoolReady = openTheSpool();
 
             Record record = HttpEndpoint.createRecord("audit", 
                     "audit-service-reactive-microservices.sidartasilva.io");
@@ -60,12 +65,19 @@ public class AuditVerticle extends AbstractVerticle {
             Single<HttpServer> httpServerReady = configureTheHTTPServer();
             Single<MessageConsumer<JsonObject>> messageConsumerReady = retrieveThePortfolioMessageSource();
 
-            Single<MessageConsumer<JsonObject>> readySingle = Single.zip(databaseReady, httpServerReady,
-                messageConsumerReady, (db, http, consumer) -> consumer);
+            Single<MessageConsumer<JsonObject>> readySingle = Single.zip(databaseReady, spoolReady, httpServerReady,
+                messageConsumerReady, (storedId, spool, http, consumer) -> {
+                    // The spool may hold operations not stored yet
+                    long lastId = Math.max(storedId, spool.lastId());
+                    writer = new AuditWriter(vertx, store, spool, Metrics.registry(),
+                        config().getJsonObject("writer", new JsonObject()), lastId);
+                    // The recent operations are served from the cache, as soon as they are received
+                    cache = new OperationCache(config().getInteger("cache-size", 1000), lastId + 1);
+                    writer.recordHandler(cache::add);
+                    return consumer;
+                });
 
-            readySingle.doOnSuccess(consumer -> {
-                consumer.handler(message -> storeInDatabase(message.body()));
-            }).subscribe(consumer -> {
+            readySingle.doOnSuccess(consumer -> writer.attach(consumer)).subscribe(consumer -> {
                 future.complete();
                 ready = true;
             }, future::fail);
@@ -74,7 +86,44 @@ public class AuditVerticle extends AbstractVerticle {
 
     }
 
+    private Single<AuditStore> createTheStore(ServiceDiscovery discovery) {
+        if ("pg".equals(config().getString("store", "jdbc"))) {
+            return Single.just(PgAuditStore.create(vertx.getDelegate(),
+                config().getJsonObject("pg", new JsonObject())));
+        }
+        return JDBCDataSource.rxGetJDBCClient(discovery,
+            svc -> svc.getName().equals("audit-database"),
+            getDatabaseConfiguration()
+        ).map(JdbcAuditStore::new);
+    }
+
+    /**
+     * Opens the spool configured by {@code spool}: {@code directory} (the {@code SPOOL_DIRECTORY} environment variable,
+     * or {@code audit-spool}, by default) and {@code segment-size} (16 MB by default). The directory must be on a
+     * persistent volume, the operations not stored yet are lost with it. The recovery reads the spool, it runs on a
+     * worker thread.
+     */
+    private Single<AuditSpool> openTheSpool() {
+        JsonObject config = config().getJsonObject("spool", new JsonObject());
+        return vertx.<AuditSpool>rxExecuteBlocking(future -> future.complete(AuditSpool.open(vertx.getDelegate(),
+            new File(config.getString("directory", getSpoolDirectory())),
+            config.getInteger("segment-size", 16 * 1024 * 1024))))
+            .toSingle();
+    }
+
+    private static String getSpoolDirectory() {
+      String directory = System.getenv("SPOOL_DIRECTORY");
+      return directory != null ? directory : "audit-spool";
+    }
+
+    /**
+     * The {@code database} configuration when set, the environment otherwise.
+     */
     private JsonObject getDatabaseConfiguration() {
+      JsonObject database = config().getJsonObject("database");
+      if (database != null) {
+        return database;
+      }
       return new JsonObject()
         .put("user", System.getenv("DB_USERNAME"))
         .put("password", System.getenv("DB_PASSWORD"))
@@ -84,35 +133,155 @@ public class AuditVerticle extends AbstractVerticle {
 
     @Override
     public void stop(Future<Void> future) throws Exception {
-        jdbc.close();
-        super.stop(future);
+        if (writer == null) {
+            if (store != null) {
+                store.close();
+            }
+            super.stop(future);
+            return;
+        }
+        // Write the spooled operations before closing the store
+        writer.close(v -> {
+            store.close();
+            future.complete();
+        });
     }
 
+    /**
+     * Serves a page of the audited operations (see {@link AuditQuery} for the parameters), newest first. When the
+     * page is full, the {@code X-Next-Cursor} header gives the {@code before} parameter of the next page.
+     * <p>
+     * The page is read from the cache of the recent operations, and completed from the database when needed, the
+     * filters being applied by the database.
+     * </p>
+     */
     private void retrieveOperations(RoutingContext context) {
-        jdbc.getConnection(ar -> {
-            SQLConnection connection = ar.result();
-            if (ar.failed()) {
-                context.fail(ar.cause());
-            } else {
-                connection.query(SELECT_STATEMENT, result -> {
-                    if (result.failed()) {
-                        context.fail(result.cause());
-                    } else {
-                        ResultSet set = result.result();
-                        List<JsonObject> operations = set.getRows().stream()
-                            .map(json -> new JsonObject(json.getString("operation")))
-                            .collect(Collectors.toList());
-                        context.response().setStatusCode(200).end(Json.encodePrettily(operations));
-                        connection.close();
-                    }
-                });
+        if (!ready) {
+            context.response().setStatusCode(503).end();
+            return;
+        }
+        AuditQuery query;
+        try {
+            query = AuditQuery.fromParams(context.request().params());
+        } catch (IllegalArgumentException e) {
+            context.response().setStatusCode(400).end(e.getMessage());
+            return;
+        }
+        List<AuditRecord> results = new ArrayList<>(query.limit);
+        if (cache.collect(query, results)) {
+            reply(context, results, results.size() == query.limit ? results.get(results.size() - 1).id() : null);
+        } else {
+            // The older operations are only in the database
+            complete(context, query, results);
+        }
+    }
+
+    private void complete(RoutingContext context, AuditQuery query, List<AuditRecord> results) {
+        store.page(query, Math.min(query.before, cache.floor()), query.limit - results.size())
+            .subscribe(records -> {
+                results.addAll(records);
+                reply(context, results,
+                    results.size() == query.limit ? results.get(results.size() - 1).id() : null);
+            }, context::fail);
+    }
+
+    /**
+     * Serves the traded volume per symbol and per minute, aggregated by the database, over the {@code from} -
+     * {@code to} date range (ms since the epoch, the last hour by default), optionally for a single {@code symbol}.
+     */
+    private void retrieveVolumes(RoutingContext context) {
+        if (!ready) {
+            context.response().setStatusCode(503).end();
+            return;
+        }
+        long to;
+        long from;
+        try {
+            String toParam = context.request().getParam("to");
+            String fromParam = context.request().getParam("from");
+            to = toParam == null ? System.currentTimeMillis() : Long.parseLong(toParam);
+            from = fromParam == null ? to - 3600000L : Long.parseLong(fromParam);
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(400).end("Invalid date: " + e.getMessage());
+            return;
+        }
+        store.volumes(from, to, context.request().getParam("symbol"))
+            .subscribe(volumes -> context.response()
+                .putHeader("content-type", "application/json")
+                .end(volumes.encode()), context::fail);
+    }
+
+    /**
+     * Streams the stored operations selected by the filters of {@link AuditQuery} ({@code limit} is ignored), oldest
+     * first, in the {@code format} given by {@link ExportFormat} ({@code ndjson} by default).
+     * <p>
+     * The operations are read from a database cursor as the response is written: the cursor is only read when the
+     * response write queue is not full, so the memory used does not depend on the number of exported operations. The
+     * operations still in the spool are not exported.
+     * </p>
+     */
+    private void exportOperations(RoutingContext context) {
+        if (!ready) {
+            context.response().setStatusCode(503).end();
+            return;
+        }
+        AuditQuery query;
+        ExportFormat format;
+        try {
+            query = AuditQuery.fromParams(context.request().params());
+            format = ExportFormat.of(context.request().getParam("format"));
+        } catch (IllegalArgumentException e) {
+            context.response().setStatusCode(400).end(e.getMessage());
+            return;
+        }
+        HttpServerResponse response = context.response()
+            .setChunked(true)
+            .putHeader("content-type", format.contentType());
+        if (format.header() != null) {
+            response.write(format.header());
+        }
+        // Write a few operations per chunk rather than one
+        store.export(query, config().getInteger("export-fetch-size", 500))
+            .map(format::line)
+            .buffer(EXPORT_CHUNK)
+            .map(lines -> {
+                Buffer chunk = Buffer.buffer();
+                lines.forEach(chunk::appendString);
+                return chunk;
+            })
+            .subscribe(response.toSubscriber()
+                .onError(err -> {
+                    // The status has been sent, the truncated export is reported by closing the connection
+                    System.err.println("Failed to export the audit operations: " + err);
+                    response.close();
+                }));
+    }
+
+    private void reply(RoutingContext context, List<AuditRecord> results, Long cursor) {
+        // The operations are stored encoded, they are not decoded and encoded again
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0) {
+                body.append(',');
             }
-        });
+            body.append(results.get(i).encoded());
+        }
+        HttpServerResponse response = context.response()
+            .putHeader("content-type", "application/json");
+        if (cursor != null) {
+            response.putHeader("X-Next-Cursor", Long.toString(cursor));
+        }
+        response.end(body.append(']').toString());
     }
 
     private Single<HttpServer> configureTheHTTPServer() {
         Router router = Router.router(vertx);
         router.get("/").handler(this::retrieveOperations);
+        router.get("/volume").handler(this::retrieveVolumes);
+        router.get("/export").handler(this::exportOperations);
+        router.get("/metrics").handler(rc -> rc.response()
+            .putHeader("content-type", Metrics.PROMETHEUS_CONTENT_TYPE)
+            .end(Metrics.scrape(Metrics.registry())));
         router.get("/health").handler(rc -> {
             if (ready) {
                 rc.response().end("Ready");
@@ -121,40 +290,10 @@ public class AuditVerticle extends AbstractVerticle {
             }
         });
         return vertx.createHttpServer().requestHandler(router)
-            .rxListen(8089);
+            .rxListen(config().getInteger("http.port", 8089));
     }
 
     private Single<MessageConsumer<JsonObject>> retrieveThePortfolioMessageSource() {
         return Single.just(vertx.eventBus().consumer("portfolio"));
     }
-
-
-    private void storeInDatabase(JsonObject operation) {
-        Single<SQLConnection> connectionRetrieved = jdbc.rxGetConnection();
-
-        Single<UpdateResult> update = connectionRetrieved
-            .flatMap(connection ->
-                connection.rxUpdateWithParams(INSERT_STATEMENT, new JsonArray().add(operation.encode()))
-                    .doAfterTerminate(connection::close));
-        update.subscribe(result -> {
-            // Ok
-        }, err -> {
-            System.err.println("Failed to insert operation in database: " + err);
-        });
-    }
-
-    private Single<JDBCClient> initializeDatabase(JDBCClient client, boolean drop) {
-        Single<SQLConnection> connectionRetrieved = client.rxGetConnection();
-        return connectionRetrieved
-            .flatMap(conn -> {
-                List<String> batch = new ArrayList<>();
-                if (drop) {
-                    batch.add(DROP_STATEMENT);
-                }
-                batch.add(CREATE_TABLE_STATEMENT);
-                Single<List<Integer>> next = conn.rxBatch(batch);
-                return next.doAfterTerminate(conn::close);
-            })
-            .map(list -> client);
-    }
 }
\ No newline at end of file
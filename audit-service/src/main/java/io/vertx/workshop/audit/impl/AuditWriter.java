@@ -0,0 +1,262 @@
+package io.vertx.workshop.audit.impl;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+import io.vertx.workshop.common.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A write-behind pipeline storing the audited operations in the database, through an {@link AuditSpool}.
+ * <p>
+ * Each operation gets an id, increasing from the highest id given at creation, and is appended to the spool before
+ * anything else: an operation received by the audit service is not lost when the database is slow or down, or when
+ * the service restarts. The {@link #recordHandler(Handler) record handler} is notified of the operations as they are
+ * spooled.
+ * </p>
+ * <p>
+ * The spool is drained into the database by multi-row batches, when either {@code batch-size} operations are waiting
+ * or every {@code flush-interval} ms. The number of batches written concurrently adapts to the database: it grows by
+ * one per stored batch, up to {@code max-in-flight}, and falls back to one when a batch fails. A failed batch is
+ * retried after a delay doubling from 100 ms up to {@code max-backoff} ms, reset once a batch is stored. When the
+ * spool reaches {@code max-spool-size} bytes, the event bus consumer is paused until it has been half drained. The
+ * spool is forced to the disk every {@code sync-interval} ms.
+ * </p>
+ * <p>
+ * When {@code notify-address} is set, the operations of each stored batch are published on this address, as a Json
+ * array. This is meant for measurements, e.g. by the load tester.
+ * </p>
+ * All the methods must be called from the verticle event loop.
+ */
+public class AuditWriter {
+
+    static final String FLUSH_LATENCY = MetricRegistry.name("audit", "writer", "flush-latency");
+    static final String BATCH_SIZE = MetricRegistry.name("audit", "writer", "batch-size");
+    static final String FAILURES = MetricRegistry.name("audit", "writer", "failures");
+    static final String SPOOL_PENDING = MetricRegistry.name("audit", "spool", "pending");
+    static final String SPOOL_SIZE = MetricRegistry.name("audit", "spool", "size");
+    static final String SPOOL_DRAIN_LAG = MetricRegistry.name("audit", "spool", "drain-lag");
+
+    private static final long MIN_BACKOFF = 100L;
+
+    private final Vertx vertx;
+    private final AuditStore store;
+    private final AuditSpool spool;
+    private final MetricRegistry registry;
+
+    private final int batchSize;
+    private final int maxQueue;
+    private final int maxInFlight;
+    private final long maxSpoolSize;
+    private final long maxBackoff;
+    private final String notifyAddress;
+    private final long flushTimer;
+    private final long syncTimer;
+
+    /**
+     * The batches read from the spool whose insertion failed, retried before reading the next ones.
+     */
+    private final ArrayDeque<AuditSpool.Batch> retries = new ArrayDeque<>();
+    private final Timer flushLatency;
+    private final Histogram batchSizes;
+    private final Meter failures;
+
+    private MessageConsumer<JsonObject> consumer;
+    private Handler<AuditRecord> recordHandler;
+    private Handler<Void> closeHandler;
+    private long lastId;
+    private boolean paused;
+    private int inFlight;
+    private int concurrency = 1;
+    private long backoff = MIN_BACKOFF;
+    private boolean backingOff;
+
+    /**
+     * Creates a new {@link AuditWriter}.
+     *
+     * @param vertx     the vert.x instance
+     * @param store     the store of the operations
+     * @param spool     the spool of the operations, the operations it holds are stored first
+     * @param registry  the registry on which the metrics are published
+     * @param config    the writer configuration
+     * @param lastId    the highest id stored in the database or in the spool
+     */
+    AuditWriter(Vertx vertx, AuditStore store, AuditSpool spool, MetricRegistry registry, JsonObject config,
+                long lastId) {
+        this.vertx = vertx;
+        this.lastId = lastId;
+        this.store = store;
+        this.spool = spool;
+        this.registry = registry;
+        this.batchSize = config.getInteger("batch-size", 100);
+        this.maxQueue = config.getInteger("max-queue", 10000);
+        this.maxInFlight = config.getInteger("max-in-flight", 4);
+        this.maxSpoolSize = config.getLong("max-spool-size", 1024L * 1024 * 1024);
+        this.maxBackoff = config.getLong("max-backoff", 10000L);
+        this.notifyAddress = config.getString("notify-address");
+
+        this.flushLatency = Metrics.timer(registry, FLUSH_LATENCY);
+        this.batchSizes = registry.histogram(BATCH_SIZE);
+        this.failures = registry.meter(FAILURES);
+        unregisterGauges();
+        registry.register(SPOOL_PENDING, (Gauge<Long>) spool::pending);
+        registry.register(SPOOL_SIZE, (Gauge<Long>) spool::size);
+        registry.register(SPOOL_DRAIN_LAG, (Gauge<Long>) spool::lag);
+
+        this.flushTimer = vertx.setPeriodic(config.getLong("flush-interval", 50L), l -> drain());
+        this.syncTimer = vertx.setPeriodic(config.getLong("sync-interval", 1000L), l -> sync(null));
+        // Store the operations left in the spool by the previous run
+        drain();
+    }
+
+    /**
+     * Attaches the writer to the given consumer. The consumer is paused and resumed according to the spool size.
+     *
+     * @param consumer the consumer receiving the operations
+     */
+    public void attach(MessageConsumer<JsonObject> consumer) {
+        this.consumer = consumer;
+        // While paused, the consumer keeps (up to) max-queue operations.
+        consumer.setMaxBufferedMessages(maxQueue);
+        consumer.handler(message -> write(message.body()));
+    }
+
+    /**
+     * Sets the handler notified of each operation when it is spooled, with its id.
+     *
+     * @param handler the handler
+     */
+    void recordHandler(Handler<AuditRecord> handler) {
+        this.recordHandler = handler;
+    }
+
+    /**
+     * Spools an operation. The operation is written with the next batch.
+     *
+     * @param operation the operation
+     */
+    public void write(JsonObject operation) {
+        AuditRecord record = new AuditRecord(++lastId, operation);
+        spool.append(record);
+        if (recordHandler != null) {
+            recordHandler.handle(record);
+        }
+        if (spool.size() >= maxSpoolSize && consumer != null && !paused) {
+            System.err.println("The audit spool is full, pausing the reception of the operations");
+            paused = true;
+            consumer.pause();
+        }
+        if (spool.unread() >= batchSize) {
+            drain();
+        }
+    }
+
+    /**
+     * Stops the periodic flush, writes the spooled operations and calls the given handler once the spool has been
+     * synced. If a batch fails while closing, the remaining operations are kept in the spool for the next start.
+     *
+     * @param done the completion handler
+     */
+    public void close(Handler<Void> done) {
+        vertx.cancelTimer(flushTimer);
+        vertx.cancelTimer(syncTimer);
+        unregisterGauges();
+        closeHandler = done;
+        drain();
+        checkClosed();
+    }
+
+    private void unregisterGauges() {
+        registry.remove(SPOOL_PENDING);
+        registry.remove(SPOOL_SIZE);
+        registry.remove(SPOOL_DRAIN_LAG);
+    }
+
+    private void drain() {
+        while (!backingOff && inFlight < concurrency) {
+            if (closeHandler != null && !retries.isEmpty()) {
+                // The database is failing, the remaining operations stay in the spool
+                break;
+            }
+            AuditSpool.Batch batch = retries.isEmpty() ? spool.read(batchSize) : retries.poll();
+            if (batch == null) {
+                break;
+            }
+            insert(batch);
+        }
+    }
+
+    private void insert(AuditSpool.Batch batch) {
+        inFlight++;
+        long begin = System.nanoTime();
+        store.insert(batch.records())
+            .subscribe(() -> {
+                flushLatency.update(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+                batchSizes.update(batch.records().size());
+                spool.stored(batch);
+                concurrency = Math.min(maxInFlight, concurrency + 1);
+                backoff = MIN_BACKOFF;
+                if (notifyAddress != null) {
+                    JsonArray operations = new JsonArray();
+                    batch.records().forEach(record -> operations.add(record.operation()));
+                    vertx.eventBus().publish(notifyAddress, operations);
+                }
+                stored();
+            }, err -> {
+                System.err.println("Failed to insert " + batch.records().size() + " operations in database, "
+                    + "retrying in " + backoff + " ms: " + err);
+                failures.mark();
+                retries.add(batch);
+                concurrency = 1;
+                if (closeHandler == null && !backingOff) {
+                    backingOff = true;
+                    vertx.setTimer(backoff, l -> {
+                        backingOff = false;
+                        drain();
+                    });
+                    backoff = Math.min(maxBackoff, backoff * 2);
+                }
+                stored();
+            });
+    }
+
+    private void stored() {
+        inFlight--;
+        if (paused && spool.size() <= maxSpoolSize / 2) {
+            paused = false;
+            consumer.resume();
+        }
+        if (spool.unread() >= batchSize || closeHandler != null) {
+            drain();
+        }
+        checkClosed();
+    }
+
+    private void checkClosed() {
+        if (closeHandler != null && inFlight == 0 && (!retries.isEmpty() || spool.unread() == 0)) {
+            Handler<Void> handler = closeHandler;
+            closeHandler = null;
+            sync(handler);
+        }
+    }
+
+    private void sync(Handler<Void> done) {
+        spool.sync(ar -> {
+            if (ar.failed()) {
+                System.err.println("Failed to sync the audit spool: " + ar.cause());
+            }
+            if (done != null) {
+                done.handle(null);
+            }
+        });
+    }
+}
@@ -0,0 +1,98 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+
+/**
+ * The formats of the audit export: one operation per line, as Json ({@code ndjson}) or as the comma separated
+ * {@link AuditRecord#COLUMNS} ({@code csv}, with a header line).
+ */
+enum ExportFormat {
+
+    NDJSON("application/x-ndjson") {
+        @Override
+        String header() {
+            return null;
+        }
+
+        @Override
+        String line(AuditRecord record) {
+            return record.encoded() + "\n";
+        }
+    },
+
+    CSV("text/csv") {
+        @Override
+        String header() {
+            return AuditRecord.COLUMNS.replace(" ", "") + "\n";
+        }
+
+        @Override
+        String line(AuditRecord record) {
+            JsonArray values = record.toParams();
+            StringBuilder line = new StringBuilder(128);
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                Object value = values.getValue(i);
+                if (value instanceof String) {
+                    escape(line, (String) value);
+                } else {
+                    line.append(value);
+                }
+            }
+            return line.append('\n').toString();
+        }
+    };
+
+    private final String contentType;
+
+    ExportFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Gets the format of the given {@code format} parameter.
+     *
+     * @param name the name of the format, {@code ndjson} if {@code null}
+     * @return the format
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    static ExportFormat of(String name) {
+        if (name == null) {
+            return NDJSON;
+        }
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown format: " + name);
+        }
+    }
+
+    String contentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the first line of the export, {@code null} if none
+     */
+    abstract String header();
+
+    /**
+     * @param record the operation
+     * @return the line of the operation, including the line separator
+     */
+    abstract String line(AuditRecord record);
+
+    /**
+     * Appends a CSV value, quoted when it contains a separator, a quote or a line separator.
+     */
+    private static void escape(StringBuilder line, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+            && value.indexOf('\r') < 0) {
+            line.append(value);
+            return;
+        }
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+}
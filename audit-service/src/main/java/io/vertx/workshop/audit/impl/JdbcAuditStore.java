@@ -0,0 +1,115 @@
+package io.vertx.workshop.audit.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.SQLOptions;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+import io.vertx.reactivex.ext.sql.SQLConnection;
+
+/**
+ * An {@link AuditStore} using the JDBC client. Each statement is run by a worker thread, holding a connection of the
+ * pool until it completes.
+ */
+class JdbcAuditStore implements AuditStore {
+
+    private final JDBCClient jdbc;
+
+    JdbcAuditStore(JDBCClient jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public Single<Long> initialize() {
+        return jdbc.rxGetConnection()
+            .flatMap(connection -> AuditSchema.migrate(connection::rxExecute,
+                connection.rxQuery(AuditSchema.SELECT_VERSION).map(set -> {
+                    Integer version = set.getResults().get(0).getInteger(0);
+                    return version == null ? 0 : version;
+                }), work -> inTransaction(connection, work))
+                .andThen(connection.rxQuery(SELECT_MAX_ID_STATEMENT))
+                .map(set -> {
+                    Long max = set.getResults().get(0).getLong(0);
+                    return max == null ? 0L : max;
+                })
+                .doFinally(connection::close));
+    }
+
+    private static Completable inTransaction(SQLConnection connection, Completable work) {
+        return connection.rxSetAutoCommit(false)
+            .andThen(work)
+            .andThen(connection.rxCommit())
+            .onErrorResumeNext(err -> connection.rxRollback()
+                .onErrorComplete()
+                .andThen(Completable.error(err)))
+            // The connection goes back to the pool
+            .doFinally(() -> connection.setAutoCommit(true, ar -> { }));
+    }
+
+    @Override
+    public Completable insert(List<AuditRecord> records) {
+        List<JsonArray> batch = new ArrayList<>(records.size());
+        for (AuditRecord record : records) {
+            batch.add(record.toParams());
+        }
+        return jdbc.rxGetConnection()
+            .flatMapCompletable(connection -> connection.rxBatchWithParams(INSERT_STATEMENT, batch)
+                .ignoreElement()
+                .doFinally(connection::close));
+    }
+
+    @Override
+    public Single<List<AuditRecord>> page(AuditQuery query, long before, int limit) {
+        JsonArray params = new JsonArray();
+        String statement = AuditStore.pageStatement(query, before, limit, params);
+        return jdbc.rxQueryWithParams(statement, params)
+            .map(set -> {
+                List<AuditRecord> records = new ArrayList<>(set.getNumRows());
+                for (JsonArray row : set.getResults()) {
+                    records.add(AuditRecord.fromRow(row));
+                }
+                return records;
+            });
+    }
+
+    /**
+     * The rows are streamed from a connection out of auto-commit, so the Postgres driver reads them with a cursor
+     * instead of loading the whole result set.
+     */
+    @Override
+    public Flowable<AuditRecord> export(AuditQuery query, int fetchSize) {
+        JsonArray params = new JsonArray();
+        String statement = AuditStore.exportStatement(query, params);
+        return jdbc.rxGetConnection()
+            .flatMapPublisher(connection -> connection.setOptions(new SQLOptions().setFetchSize(fetchSize))
+                .rxSetAutoCommit(false)
+                .andThen(connection.rxQueryStreamWithParams(statement, params))
+                .flatMapPublisher(stream -> stream.toFlowable())
+                .map(AuditRecord::fromRow)
+                .doFinally(() -> connection.setAutoCommit(true, ar -> connection.close())));
+    }
+
+    @Override
+    public Single<JsonArray> volumes(long from, long to, String symbol) {
+        JsonArray params = new JsonArray();
+        String statement = AuditStore.volumesStatement(from, to, symbol, params);
+        return jdbc.rxQueryWithParams(statement, params)
+            .map(set -> {
+                JsonArray volumes = new JsonArray();
+                for (JsonArray row : set.getResults()) {
+                    volumes.add(AuditStore.volume(row.getString(0), row.getLong(1), row.getLong(2),
+                        row.getLong(3), row.getLong(4)));
+                }
+                return volumes;
+            });
+    }
+
+    @Override
+    public void close() {
+        jdbc.close();
+    }
+}
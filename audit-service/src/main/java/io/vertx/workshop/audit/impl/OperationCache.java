@@ -0,0 +1,71 @@
+package io.vertx.workshop.audit.impl;
+
+import java.util.List;
+
+/**
+ * A bounded ring buffer of the most recent audited operations, filled from the {@code portfolio} event stream as
+ * they are received, so the recent pages are served without touching the database.
+ * <p>
+ * The cache holds every operation whose id is greater than or equal to {@link #floor()}. The older operations
+ * (stored before the service started, or evicted) must be read from the database.
+ * </p>
+ * All the methods must be called from the verticle event loop.
+ */
+final class OperationCache {
+
+    private final AuditRecord[] records;
+    private int head;
+    private int size;
+    private long floor;
+
+    /**
+     * Creates a new {@link OperationCache}.
+     *
+     * @param capacity the maximum number of cached operations
+     * @param next     the id of the next operation, the lower ones are in the database
+     */
+    OperationCache(int capacity, long next) {
+        this.records = new AuditRecord[capacity];
+        this.floor = next;
+    }
+
+    /**
+     * Adds an operation, evicting the oldest one if the cache is full. The ids must be increasing.
+     *
+     * @param record the operation
+     */
+    void add(AuditRecord record) {
+        if (size == records.length) {
+            floor = records[head].id() + 1;
+        } else {
+            size++;
+        }
+        records[head] = record;
+        head = (head + 1) % records.length;
+    }
+
+    /**
+     * @return the lowest id from which all the operations are cached
+     */
+    long floor() {
+        return floor;
+    }
+
+    /**
+     * Collects the cached operations matching the query, newest first, until the page is full.
+     *
+     * @param query   the query
+     * @param results the page being filled
+     * @return {@code true} if the page is complete, {@code false} if the operations older than {@link #floor()} must
+     * be read from the database
+     */
+    boolean collect(AuditQuery query, List<AuditRecord> results) {
+        for (int i = 1; i <= size && results.size() < query.limit; i++) {
+            AuditRecord record = records[(head - i + records.length) % records.length];
+            if (query.matches(record)) {
+                results.add(record);
+            }
+        }
+        return results.size() == query.limit || floor <= 1;
+    }
+}
@@ -0,0 +1,121 @@
+package io.vertx.workshop.audit.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/**
+ * Compares the {@link JdbcAuditStore} and the {@link PgAuditStore} on a local Postgres started from the embedded
+ * binaries (no container needed). Both stores use a pool of 4 connections, and 16 threads insert batches of
+ * {@code batchSize} operations or read filtered pages concurrently, so the JDBC store is bounded by its worker
+ * threads while the Postgres client keeps all the statements on the event loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(16)
+public class AuditStoreBenchmark {
+
+    private static final String[] COMPANIES = {"Divinator", "MacroHard", "Black Coat"};
+
+    @Param({"jdbc", "pg"})
+    public String store;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private EmbeddedPostgres postgres;
+    private Vertx vertx;
+    private AuditStore auditStore;
+    private final AtomicLong ids = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        postgres = EmbeddedPostgres.builder().start();
+        vertx = Vertx.vertx();
+        if ("pg".equals(store)) {
+            auditStore = PgAuditStore.create(vertx.getDelegate(), new JsonObject()
+                .put("host", "localhost")
+                .put("port", postgres.getPort())
+                .put("database", "postgres")
+                .put("user", "postgres")
+                .put("password", "")
+                .put("pool-size", 4));
+        } else {
+            auditStore = new JdbcAuditStore(JDBCClient.createNonShared(vertx, new JsonObject()
+                .put("url", postgres.getJdbcUrl("postgres", "postgres"))
+                .put("driver_class", "org.postgresql.Driver")
+                .put("max_pool_size", 4)));
+        }
+        ids.set(auditStore.initialize().blockingGet());
+        // Some history for the pages
+        for (int i = 0; i < 100; i++) {
+            auditStore.insert(batch(100)).blockingAwait();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        auditStore.close();
+        vertx.rxClose().blockingAwait();
+        postgres.close();
+    }
+
+    private List<AuditRecord> batch(int size) {
+        List<AuditRecord> batch = new ArrayList<>(size);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < size; i++) {
+            String company = COMPANIES[random.nextInt(COMPANIES.length)];
+            batch.add(new AuditRecord(ids.incrementAndGet(), new JsonObject()
+                .put("account", "trader-" + random.nextInt(1000))
+                .put("sequence", (long) i)
+                .put("action", random.nextBoolean() ? "BUY" : "SELL")
+                .put("quote", new JsonObject()
+                    .put("name", company)
+                    .put("symbol", company.substring(0, 3).toUpperCase())
+                    .put("bid", 99.5)
+                    .put("ask", 100.5))
+                .put("amount", random.nextInt(1, 10))
+                .put("owned", random.nextInt(100))
+                .put("date", System.currentTimeMillis())));
+        }
+        return batch;
+    }
+
+    @Benchmark
+    public void insert() {
+        auditStore.insert(batch(batchSize)).blockingAwait();
+    }
+
+    @Benchmark
+    public List<AuditRecord> page() {
+        String company = COMPANIES[ThreadLocalRandom.current().nextInt(COMPANIES.length)];
+        return auditStore.page(new AuditQuery(10, Long.MAX_VALUE, company, null, Long.MIN_VALUE, Long.MAX_VALUE),
+            Long.MAX_VALUE, 10).blockingGet();
+    }
+}
@@ -0,0 +1,84 @@
+package io.vertx.workshop.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.types.HttpEndpoint;
+import io.vertx.workshop.common.DiscoveryCache;
+
+/**
+ * Measures the retrieval of the web client of an HTTP endpoint, from the discovery (a lookup and a new client per
+ * call, as done by the services before) and from a {@link DiscoveryCache}. The discovery uses the local backend, a
+ * clustered backend makes the lookups much slower. Both calls run on an event loop, as in the services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscoveryCacheBenchmark {
+
+    private Vertx vertx;
+    private Context context;
+    private ServiceDiscovery discovery;
+    private DiscoveryCache cache;
+
+    @Setup
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        discovery = ServiceDiscovery.create(vertx);
+        CompletableFuture<Void> published = new CompletableFuture<>();
+        discovery.publish(HttpEndpoint.createRecord("audit", "localhost", 8089, "/"), ar -> published.complete(null));
+        published.get();
+        CompletableFuture<Void> created = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            cache = new DiscoveryCache(vertx, discovery, new MetricRegistry());
+            created.complete(null);
+        });
+        created.get();
+    }
+
+    @TearDown
+    public void tearDown() {
+        discovery.close();
+        vertx.close();
+    }
+
+    @Benchmark
+    public Object discovery() throws Exception {
+        CompletableFuture<WebClient> result = new CompletableFuture<>();
+        context.runOnContext(v -> HttpEndpoint.getWebClient(discovery, record -> record.getName().equals("audit"),
+            ar -> {
+                ServiceDiscovery.releaseServiceObject(discovery, ar.result());
+                result.complete(ar.result());
+            }));
+        return result.get();
+    }
+
+    @Benchmark
+    public Object cache() throws Exception {
+        CompletableFuture<WebClient> result = new CompletableFuture<>();
+        context.runOnContext(v -> cache.get("audit", HttpEndpoint.TYPE, WebClient.class,
+            ar -> result.complete(ar.result())));
+        return result.get();
+    }
+}
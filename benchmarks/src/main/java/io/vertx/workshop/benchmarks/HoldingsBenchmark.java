@@ -0,0 +1,111 @@
+package io.vertx.workshop.benchmarks;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.portfolio.Holdings;
+
+/**
+ * Compares the {@link Holdings} of a portfolio to the {@code TreeMap} they replace, for {@code positions} owned
+ * companies:
+ * <ul>
+ * <li>{@code *Amount}: the lookup of the shares of a company</li>
+ * <li>{@code *Update}: a buy, the update of the shares of a company</li>
+ * <li>{@code *ToJson}: the Json conversion, ordered by company name</li>
+ * <li>{@code *Copy}: the copy, as done for the snapshots</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HoldingsBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int positions;
+
+    private TreeMap<String, Integer> tree;
+    private Holdings holdings;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setup() {
+        tree = new TreeMap<>();
+        holdings = new Holdings();
+        names = new String[positions];
+        for (int i = 0; i < positions; i++) {
+            names[i] = "Company-" + i;
+            tree.put(names[i], i + 1);
+            holdings.set(names[i], i + 1);
+        }
+    }
+
+    private String nextName() {
+        next = next + 1 == positions ? 0 : next + 1;
+        return names[next];
+    }
+
+    @Benchmark
+    public int treeAmount() {
+        Integer current = tree.get(nextName());
+        return current == null ? 0 : current;
+    }
+
+    @Benchmark
+    public int holdingsAmount() {
+        return holdings.amount(nextName());
+    }
+
+    @Benchmark
+    public Object treeUpdate() {
+        String name = nextName();
+        Integer current = tree.get(name);
+        return tree.put(name, (current == null ? 0 : current) + 1);
+    }
+
+    @Benchmark
+    public int holdingsUpdate() {
+        String name = nextName();
+        return holdings.set(name, holdings.amount(name) + 1);
+    }
+
+    @Benchmark
+    public JsonObject treeToJson() {
+        // As the generated converter does
+        JsonObject json = new JsonObject();
+        tree.forEach(json::put);
+        return json;
+    }
+
+    @Benchmark
+    public JsonObject holdingsToJson() {
+        return holdings.toJson();
+    }
+
+    @Benchmark
+    public Map<String, Integer> treeCopy() {
+        return new TreeMap<>(tree);
+    }
+
+    @Benchmark
+    public Map<String, Integer> holdingsCopy() {
+        return new Holdings(holdings);
+    }
+}
@@ -0,0 +1,102 @@
+package io.vertx.workshop.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.workshop.portfolio.impl.PortfolioJournal;
+
+/**
+ * Measures the latency of a journaled write, from the submission to the shard event loop to the durable
+ * acknowledgement. Several threads submit concurrently, so the writes are grouped by the group commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class JournalBenchmark {
+
+    @Param({"true", "false"})
+    public boolean sync;
+
+    private Vertx vertx;
+    private Context context;
+    private File directory;
+    private PortfolioJournal journal;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        directory = Files.createTempDirectory("journal-benchmark").toFile();
+        journal = new PortfolioJournal(vertx, directory, 64 * 1024 * 1024, sync);
+        CompletableFuture<Void> opened = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            journal.open(0);
+            opened.complete(null);
+        });
+        opened.get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(ar -> closed.complete(null));
+        closed.get();
+        delete(directory);
+    }
+
+    @Benchmark
+    public Void append() throws Exception {
+        int account = ThreadLocalRandom.current().nextInt(1000);
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            // Roll and snapshot like the shard does, with an empty state as only the writes are measured
+            if (journal.needsSnapshot()) {
+                journal.snapshot(new HashMap<>(), ar -> { });
+            }
+            journal.append("trader-" + account, "MacroHard", account, 10000.0, ar -> {
+                if (ar.succeeded()) {
+                    durable.complete(null);
+                } else {
+                    durable.completeExceptionally(ar.cause());
+                }
+            });
+        });
+        return durable.get();
+    }
+
+    static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,133 @@
+package io.vertx.workshop.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.vertx.workshop.portfolio.impl.OrderBook;
+
+/**
+ * Measures the order operations of an {@link OrderBook} on a single thread, in operations per microsecond (millions
+ * per second):
+ * <ul>
+ * <li>{@code restAndCancel}: a limit order resting behind the others, then cancelled</li>
+ * <li>{@code restAndMatch}: a limit order resting at the top of the book, then filled by a marketable order</li>
+ * <li>{@code mixed}: a random flow of limit orders around the mid price (50%), cancels of resting orders (40%) and
+ * marketable orders filling some resting orders (10%), on a book holding about {@code depth} orders</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBookBenchmark {
+
+    private static final long MID = 10_000;
+    private static final int FLOW = 1 << 16;
+
+    @Param({"1000", "100000"})
+    public int depth;
+
+    private final Object owner = new Object();
+    // Another owner, the book cancels rather than fills the resting orders of the owner of the incoming order
+    private final Object taker = new Object();
+    private OrderBook book;
+    private long fills;
+
+    private int[] actions;
+    private long[] prices;
+    private int[] quantities;
+    private long[] live;
+    private int liveCount;
+    private int next;
+
+    @Setup
+    public void setup() {
+        book = new OrderBook((maker, makerId, makerRemaining, taker, takerBuys, price, quantity) -> fills++);
+        live = new long[depth * 4];
+        Random random = new Random(42);
+        for (int i = 0; i < depth; i++) {
+            restRandom(random);
+        }
+        actions = new int[FLOW];
+        prices = new long[FLOW];
+        quantities = new int[FLOW];
+        for (int i = 0; i < FLOW; i++) {
+            int draw = random.nextInt(10);
+            actions[i] = draw < 5 ? 0 : draw < 9 ? 1 : 2;
+            prices[i] = 1 + random.nextInt(50);
+            quantities[i] = 1 + random.nextInt(100);
+        }
+    }
+
+    private void restRandom(Random random) {
+        boolean buy = random.nextBoolean();
+        long price = buy ? MID - 1 - random.nextInt(50) : MID + 1 + random.nextInt(50);
+        live[liveCount++] = book.rest(buy, price, 1 + random.nextInt(100), owner);
+    }
+
+    @Benchmark
+    public int restAndCancel() {
+        long id = book.rest(true, MID - 25, 10, owner);
+        return book.cancel(id);
+    }
+
+    @Benchmark
+    public int restAndMatch() {
+        book.rest(false, MID, 10, owner);
+        return book.match(true, MID, 10, taker);
+    }
+
+    @Benchmark
+    public void mixed(Blackhole blackhole) {
+        int i = next;
+        next = (next + 1) & (FLOW - 1);
+        switch (actions[i]) {
+            case 0: {
+                // A limit order resting on one side of the mid price
+                boolean buy = (i & 1) == 0;
+                long price = buy ? MID - prices[i] : MID + prices[i];
+                long id = book.rest(buy, price, quantities[i], owner);
+                if (liveCount < live.length) {
+                    live[liveCount++] = id;
+                }
+                blackhole.consume(id);
+                break;
+            }
+            case 1: {
+                // Cancel a resting order, possibly already filled
+                if (liveCount > 0) {
+                    int index = (int) (prices[i] * 7919 % liveCount);
+                    blackhole.consume(book.cancel(live[index]));
+                    live[index] = live[--liveCount];
+                }
+                break;
+            }
+            default: {
+                // A marketable order, filling the top of the book
+                boolean buy = (i & 1) == 0;
+                blackhole.consume(book.match(buy, buy ? Long.MAX_VALUE : 0, quantities[i], taker));
+                break;
+            }
+        }
+        if (book.size() < depth / 2) {
+            // Keep the book about as deep as configured
+            book.rest(true, MID - 1 - prices[i], quantities[i], owner);
+            book.rest(false, MID + 1 + prices[i], quantities[i], owner);
+        }
+    }
+}
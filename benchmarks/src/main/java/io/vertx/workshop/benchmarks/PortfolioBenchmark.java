@@ -0,0 +1,76 @@
+package io.vertx.workshop.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.portfolio.Portfolio;
+
+/**
+ * Measures the {@link Portfolio} data object: the Json round trip through the generated converter, the copy and the
+ * lookup of the owned shares, for a portfolio owning {@code companies} companies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PortfolioBenchmark {
+
+    @Param({"2", "100"})
+    public int companies;
+
+    private Portfolio portfolio;
+    private JsonObject json;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setup() {
+        portfolio = new Portfolio().setCash(10000.0);
+        names = new String[companies];
+        for (int i = 0; i < companies; i++) {
+            names[i] = "Company-" + i;
+            portfolio.getShares().put(names[i], i + 1);
+        }
+        json = portfolio.toJson();
+    }
+
+    @Benchmark
+    public JsonObject toJson() {
+        return portfolio.toJson();
+    }
+
+    @Benchmark
+    public Portfolio fromJson() {
+        return new Portfolio(json);
+    }
+
+    @Benchmark
+    public Portfolio roundTrip() {
+        return new Portfolio(portfolio.toJson());
+    }
+
+    @Benchmark
+    public Portfolio copy() {
+        return new Portfolio(portfolio);
+    }
+
+    @Benchmark
+    public int getAmount() {
+        next = (next + 1) % companies;
+        return portfolio.getAmount(names[next]);
+    }
+}
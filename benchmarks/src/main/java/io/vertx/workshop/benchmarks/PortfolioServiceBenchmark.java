@@ -0,0 +1,97 @@
+package io.vertx.workshop.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.workshop.common.Instrument;
+import io.vertx.workshop.common.Quote;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.impl.LatestQuoteCache;
+import io.vertx.workshop.portfolio.impl.PortfolioServiceImpl;
+
+/**
+ * Measures a buy followed by a sell on the in-memory {@link PortfolioServiceImpl}, including the valuation update and
+ * the publication of the events (without consumers). The trades are spread over {@code accounts} accounts.
+ * <p>
+ * The trades are priced with the last market quote, which is received again before each iteration so it never goes
+ * stale, and a failed trade fails the benchmark rather than being measured as a cheap rejection.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PortfolioServiceBenchmark {
+
+    @Param({"1", "10000"})
+    public int accounts;
+
+    private Vertx vertx;
+    private LatestQuoteCache quotes;
+    private PortfolioServiceImpl service;
+    private JsonObject quote;
+    private String[] ids;
+    private int next;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup() {
+        vertx = Vertx.vertx();
+        quotes = new LatestQuoteCache(10000);
+        service = new PortfolioServiceImpl(vertx, null, quotes, 1_000_000_000.0);
+        ids = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ids[i] = "trader-" + i;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void receiveQuote() {
+        Quote last = new Quote(Instrument.intern("MacroHard", "MCH"), 99.5, 100.5, 10000, 100.0, 5000,
+            System.currentTimeMillis());
+        quotes.update(last);
+        service.onQuote(last);
+        quote = last.toJson();
+    }
+
+    private void check(AsyncResult<Portfolio> ar) {
+        if (ar.failed()) {
+            throw new IllegalStateException("The trade failed", ar.cause());
+        }
+        blackhole.consume(ar.result());
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    public void buyAndSell(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        String account = ids[next];
+        next = (next + 1) % accounts;
+        // The results are delivered synchronously, without journal
+        service.buyForAccount(account, 1, quote, this::check);
+        service.sellForAccount(account, 1, quote, this::check);
+    }
+}
@@ -0,0 +1,137 @@
+package io.vertx.workshop.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.impl.codecs.JsonObjectMessageCodec;
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.common.Instrument;
+import io.vertx.workshop.common.Quote;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.PortfolioDelta;
+
+/**
+ * Measures the messages exchanged by the generated portfolio service proxy for a {@code buyForAccount} call: the
+ * request built by the client proxy, its decoding by the proxy handler, and the {@link Portfolio} reply. The wire
+ * variants include the Json codec used by the clustered event bus, the local ones the copy done by a local send.
+ * The {@code delta*} variants measure the {@link PortfolioDelta} reply of {@code buyDelta}, whose size does not
+ * depend on the number of {@code companies} owned.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProxyMessageBenchmark {
+
+    private final JsonObjectMessageCodec codec = new JsonObjectMessageCodec();
+
+    @Param({"2", "1000"})
+    public int companies;
+
+    private JsonObject quote;
+    private Portfolio portfolio;
+    private Buffer request;
+    private Buffer reply;
+    private PortfolioDelta delta;
+    private Buffer deltaReply;
+
+    @Setup
+    public void setup() {
+        quote = new Quote(Instrument.intern("MacroHard", "MCH"), 99.5, 100.5, 10000, 100.0, 5000,
+            System.currentTimeMillis()).toJson();
+        portfolio = new Portfolio().setCash(9000.0);
+        portfolio.getShares().put("MacroHard", 10);
+        portfolio.getShares().put("Divinator", 3);
+        for (int i = 2; i < companies; i++) {
+            portfolio.getShares().put("Company-" + i, i);
+        }
+        delta = new PortfolioDelta().setAccount("trader-1").setEpoch(42).setBase(7).setSequence(8)
+            .setName("MacroHard").setAmount(10).setCashDelta(-301.5);
+
+        request = Buffer.buffer();
+        codec.encodeToWire(request, buildRequest());
+        reply = Buffer.buffer();
+        codec.encodeToWire(reply, portfolio.toJson());
+        deltaReply = Buffer.buffer();
+        codec.encodeToWire(deltaReply, delta.toJson());
+    }
+
+    /**
+     * What the generated client proxy does.
+     */
+    private JsonObject buildRequest() {
+        JsonObject json = new JsonObject();
+        json.put("account", "trader-1");
+        json.put("amount", 3);
+        json.put("quote", quote);
+        return json;
+    }
+
+    @Benchmark
+    public void requestLocal(Blackhole blackhole) {
+        blackhole.consume(new DeliveryOptions().addHeader("action", "buyForAccount"));
+        // The local event bus copies the Json messages
+        blackhole.consume(codec.transform(buildRequest()));
+    }
+
+    @Benchmark
+    public Buffer requestEncode() {
+        Buffer buffer = Buffer.buffer(256);
+        codec.encodeToWire(buffer, buildRequest());
+        return buffer;
+    }
+
+    @Benchmark
+    public JsonObject requestDecode() {
+        // What the generated proxy handler does with the message
+        JsonObject json = codec.decodeFromWire(0, request);
+        json.getString("account");
+        json.getInteger("amount");
+        return json.getJsonObject("quote");
+    }
+
+    @Benchmark
+    public Portfolio replyLocal() {
+        return new Portfolio(codec.transform(portfolio.toJson()));
+    }
+
+    @Benchmark
+    public Buffer replyEncode() {
+        Buffer buffer = Buffer.buffer(128);
+        codec.encodeToWire(buffer, portfolio.toJson());
+        return buffer;
+    }
+
+    @Benchmark
+    public Portfolio replyDecode() {
+        return new Portfolio(codec.decodeFromWire(0, reply));
+    }
+
+    @Benchmark
+    public Buffer deltaReplyEncode() {
+        Buffer buffer = Buffer.buffer(128);
+        codec.encodeToWire(buffer, delta.toJson());
+        return buffer;
+    }
+
+    @Benchmark
+    public PortfolioDelta deltaReplyDecode() {
+        return new PortfolioDelta(codec.decodeFromWire(0, deltaReply));
+    }
+}
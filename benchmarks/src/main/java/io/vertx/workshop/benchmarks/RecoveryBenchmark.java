@@ -0,0 +1,97 @@
+package io.vertx.workshop.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.impl.PortfolioJournal;
+
+/**
+ * Measures the recovery time of a shard journal of {@code records} records over {@code accounts} accounts, with a
+ * snapshot taken after {@code snapshotPercent} % of the records: only the tail after the snapshot is replayed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RecoveryBenchmark {
+
+    @Param({"1000000"})
+    public int records;
+
+    @Param({"10000"})
+    public int accounts;
+
+    @Param({"0", "90"})
+    public int snapshotPercent;
+
+    private File directory;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("recovery-benchmark").toFile();
+        Vertx vertx = Vertx.vertx();
+        Context context = vertx.getOrCreateContext();
+        PortfolioJournal journal = new PortfolioJournal(vertx, directory, 256 * 1024 * 1024, false);
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            journal.open(0);
+            SplittableRandom random = new SplittableRandom(42);
+            Map<String, Portfolio> state = new HashMap<>();
+            int snapshotAt = (int) ((long) records * snapshotPercent / 100);
+            for (int i = 0; i < records; i++) {
+                String account = "trader-" + random.nextInt(accounts);
+                String company = "Company-" + random.nextInt(100);
+                int owned = random.nextInt(100);
+                double cash = random.nextDouble() * 10000;
+                journal.append(account, company, owned, cash, ar -> { });
+                Portfolio portfolio = state.computeIfAbsent(account, k -> new Portfolio()).setCash(cash);
+                portfolio.getShares().put(company, owned);
+                if (i + 1 == snapshotAt) {
+                    Map<String, Portfolio> copy = new HashMap<>();
+                    state.forEach((k, p) -> copy.put(k, new Portfolio(p)));
+                    journal.snapshot(copy, ar -> { });
+                }
+            }
+            // Wait for the snapshot, the blocking operations are ordered
+            vertx.<Void>executeBlocking(future -> future.complete(), true, ar -> written.complete(null));
+        });
+        written.get();
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(ar -> closed.complete(null));
+        closed.get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        JournalBenchmark.delete(directory);
+    }
+
+    @Benchmark
+    public PortfolioJournal.Recovery recover() {
+        return PortfolioJournal.recover(directory);
+    }
+}
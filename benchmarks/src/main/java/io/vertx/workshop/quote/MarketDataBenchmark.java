@@ -0,0 +1,94 @@
+package io.vertx.workshop.quote;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.common.Quote;
+
+/**
+ * Measures the generation of the market data: the legacy per company computation, the creation of the quote and its
+ * Json representation, and a step of the partitioned simulator.
+ * <p>
+ * This class lives in the package of the generator to reach the package private methods of
+ * {@link MarketDataVerticle}.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarketDataBenchmark {
+
+    @Param({"10000"})
+    public int companies;
+
+    private MarketDataVerticle verticle;
+    private MarketSimulator simulator;
+    private int[] updated;
+
+    @Setup
+    public void setup() {
+        verticle = new MarketDataVerticle();
+        verticle.init(company(0));
+
+        simulator = new MarketSimulator(companies, 42);
+        for (int i = 0; i < companies; i++) {
+            simulator.add(company(i), 3000);
+        }
+        updated = new int[simulator.size()];
+    }
+
+    private static JsonObject company(int index) {
+        return new JsonObject()
+            .put("name", "Company-" + index)
+            .put("symbol", "C" + index)
+            .put("volume", 10000)
+            .put("price", 100.0)
+            .put("variation", 50);
+    }
+
+    @Benchmark
+    public double compute() {
+        verticle.compute();
+        return verticle.bid;
+    }
+
+    @Benchmark
+    public Quote toQuote() {
+        return verticle.toQuote();
+    }
+
+    @Benchmark
+    public JsonObject toJson() {
+        // A new quote each time, as the Json representation is cached by the quote
+        return verticle.toQuote().toJson();
+    }
+
+    /**
+     * A step of the whole market, the score is in steps, not companies.
+     */
+    @Benchmark
+    public int simulatorStep() {
+        int count = simulator.step(updated);
+        long now = System.currentTimeMillis();
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += simulator.quote(updated[i], now).getShares();
+        }
+        return sum;
+    }
+}
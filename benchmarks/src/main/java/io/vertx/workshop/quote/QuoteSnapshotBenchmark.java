@@ -0,0 +1,93 @@
+package io.vertx.workshop.quote;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.workshop.common.Instrument;
+import io.vertx.workshop.common.Quote;
+
+/**
+ * Measures the encoding of the responses of the quote REST API by the {@link QuoteSnapshotCache}: the whole market
+ * after {@code changed} quotes changed, its gzip compression, and the selection of a few companies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuoteSnapshotBenchmark {
+
+    @Param({"1000", "10000"})
+    public int companies;
+
+    @Param({"1", "100"})
+    public int changed;
+
+    private QuoteSnapshotCache cache;
+    private Instrument[] instruments;
+    private List<String> selection;
+    private int next;
+
+    @Setup
+    public void setup() {
+        cache = new QuoteSnapshotCache();
+        instruments = new Instrument[companies];
+        for (int i = 0; i < companies; i++) {
+            instruments[i] = Instrument.intern("Company-" + i, "C" + i);
+            cache.update(quote(instruments[i]));
+        }
+        selection = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            selection.add("Company-" + (i * companies / 20));
+        }
+    }
+
+    private static Quote quote(Instrument instrument) {
+        return new Quote(instrument, 99.5, 100.5, 10000, 100.0, 5000, System.currentTimeMillis());
+    }
+
+    private void change() {
+        for (int i = 0; i < changed; i++) {
+            cache.update(quote(instruments[next]));
+            next = (next + 1) % companies;
+        }
+    }
+
+    @Benchmark
+    public Buffer snapshot() {
+        change();
+        return cache.snapshot();
+    }
+
+    @Benchmark
+    public Buffer gzipSnapshot() {
+        change();
+        return cache.gzipSnapshot();
+    }
+
+    @Benchmark
+    public Buffer unchangedSnapshot() {
+        return cache.snapshot();
+    }
+
+    @Benchmark
+    public Buffer select() {
+        change();
+        return cache.select(selection);
+    }
+}
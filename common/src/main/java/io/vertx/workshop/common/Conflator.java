@@ -0,0 +1,140 @@
+package io.vertx.workshop.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * Conflates a stream of values (typically quotes) for a single subscriber: only the latest value per key (typically
+ * the symbol) is kept, and the pending values are delivered at most {@code maxRate} times per second.
+ * <p>
+ * A slow subscriber never builds an unbounded queue nor processes stale values: between two deliveries, a newer value
+ * replaces the pending one of the same key, so at most one value per key is pending. When a {@code ready} condition
+ * is given (for instance, the write queue of a socket is not full), the delivery is postponed while it is not met, the
+ * values being conflated in the meantime.
+ * </p>
+ * <p>
+ * A conflator is not thread-safe, it must be used from the context (event loop) that created it.
+ * </p>
+ *
+ * @param <T> the type of values
+ */
+public class Conflator<T> {
+
+    private final Vertx vertx;
+    private final Function<T, String> key;
+    private final long period;
+    private final BooleanSupplier ready;
+    private final Handler<T> handler;
+
+    private final Map<String, T> pending = new LinkedHashMap<>();
+    private long timer = -1;
+    private long lastDelivery;
+    private long conflated;
+    private boolean closed;
+
+    /**
+     * Creates a new {@link Conflator}.
+     *
+     * @param vertx   the vert.x instance
+     * @param key     the function computing the key of the values, only the latest value of a key is delivered
+     * @param maxRate the maximum number of deliveries per second
+     * @param handler the handler receiving the values, called for each pending value at each delivery
+     */
+    public Conflator(Vertx vertx, Function<T, String> key, double maxRate, Handler<T> handler) {
+        this(vertx, key, maxRate, () -> true, handler);
+    }
+
+    /**
+     * Creates a new {@link Conflator}.
+     *
+     * @param vertx   the vert.x instance
+     * @param key     the function computing the key of the values, only the latest value of a key is delivered
+     * @param maxRate the maximum number of deliveries per second
+     * @param ready   whether the subscriber can receive values, the delivery is postponed otherwise
+     * @param handler the handler receiving the values, called for each pending value at each delivery
+     */
+    public Conflator(Vertx vertx, Function<T, String> key, double maxRate, BooleanSupplier ready,
+                     Handler<T> handler) {
+        if (maxRate <= 0) {
+            throw new IllegalArgumentException("The maximum rate must be positive: " + maxRate);
+        }
+        this.vertx = vertx;
+        this.key = key;
+        this.period = Math.max(1, (long) (1000 / maxRate));
+        this.ready = ready;
+        this.handler = handler;
+    }
+
+    /**
+     * Offers a value. It replaces the pending value of the same key, if any, and is delivered with the next delivery.
+     *
+     * @param value the value
+     */
+    public void offer(T value) {
+        if (closed) {
+            return;
+        }
+        if (pending.put(key.apply(value), value) != null) {
+            conflated++;
+        }
+        if (timer == -1) {
+            // Deliver as soon as the rate allows it
+            schedule(Math.max(1, lastDelivery + period - System.currentTimeMillis()));
+        }
+    }
+
+    private void schedule(long delay) {
+        timer = vertx.setTimer(delay, l -> deliver());
+    }
+
+    private void deliver() {
+        timer = -1;
+        if (closed || pending.isEmpty()) {
+            return;
+        }
+        if (!ready.getAsBoolean()) {
+            // Keep conflating until the subscriber catches up
+            schedule(period);
+            return;
+        }
+        lastDelivery = System.currentTimeMillis();
+        List<T> values = new ArrayList<>(pending.values());
+        pending.clear();
+        for (T value : values) {
+            handler.handle(value);
+        }
+    }
+
+    /**
+     * @return the number of values replaced by a newer one before being delivered
+     */
+    public long conflated() {
+        return conflated;
+    }
+
+    /**
+     * @return the number of values waiting for the next delivery
+     */
+    public int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Closes the conflator, the pending values are dropped.
+     */
+    public void close() {
+        closed = true;
+        pending.clear();
+        if (timer != -1) {
+            vertx.cancelTimer(timer);
+            timer = -1;
+        }
+    }
+}
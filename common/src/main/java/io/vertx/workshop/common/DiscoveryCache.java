@@ -0,0 +1,229 @@
+package io.vertx.workshop.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.Record;
+import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.ServiceReference;
+import io.vertx.servicediscovery.Status;
+
+/**
+ * Caches the services (web clients, proxies...) retrieved from the service discovery, per service name and type.
+ * <p>
+ * The discovery backend is only queried for the first lookup of a service, the next lookups are served from the
+ * cache.
+ * The cache follows the announces of the discovery: when a cached service is published again (a new registration),
+ * the cache switches to the new record and releases the former service; when it is unpublished or not
+ * {@link Status#UP} anymore, the service is released and the next lookup queries the backend again. Concurrent
+ * lookups of a service not cached yet share a single backend query. Failed lookups (no such service) are cached for
+ * a short time, so a caller falling back when a service is missing does not query the backend on each call, until a
+ * record of the service is announced.
+ * </p>
+ * <p>
+ * The hits, the misses and the latency of the backend lookups are published as {@code discovery.cache.hits},
+ * {@code discovery.cache.misses} and {@code discovery.cache.lookup-latency}.
+ * </p>
+ * <p>
+ * A cache is not thread-safe, it must be used from the context (event loop) that created it.
+ * </p>
+ */
+public class DiscoveryCache {
+
+    /**
+     * The time a failed lookup is cached by default, in ms.
+     */
+    public static final long DEFAULT_FAILURE_TTL = 1000;
+
+    private final ServiceDiscovery discovery;
+    private final MessageConsumer<JsonObject> announces;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final long failureTtl;
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Timer lookupLatency;
+
+    private static final class Entry {
+        private final Class<?> type;
+        private ServiceReference reference;
+        private Object service;
+        private AsyncResult<Object> failure;
+        private long failedUntil;
+        private List<Handler<AsyncResult<Object>>> waiters = new ArrayList<>();
+
+        private Entry(Class<?> type) {
+            this.type = type;
+        }
+    }
+
+    /**
+     * Creates a new {@link DiscoveryCache}, following the announces of the given discovery.
+     *
+     * @param vertx     the vert.x instance
+     * @param discovery the service discovery
+     * @param registry  the registry on which the metrics are published
+     */
+    public DiscoveryCache(Vertx vertx, ServiceDiscovery discovery, MetricRegistry registry) {
+        this(vertx, discovery, registry, DEFAULT_FAILURE_TTL);
+    }
+
+    /**
+     * Creates a new {@link DiscoveryCache}, following the announces of the given discovery.
+     *
+     * @param vertx      the vert.x instance
+     * @param discovery  the service discovery
+     * @param registry   the registry on which the metrics are published
+     * @param failureTtl the time a failed lookup is cached, in ms, 0 to not cache them
+     */
+    public DiscoveryCache(Vertx vertx, ServiceDiscovery discovery, MetricRegistry registry, long failureTtl) {
+        this.discovery = discovery;
+        this.failureTtl = failureTtl;
+        this.hits = registry.meter(MetricRegistry.name("discovery", "cache", "hits"));
+        this.misses = registry.meter(MetricRegistry.name("discovery", "cache", "misses"));
+        this.lookupLatency = Metrics.timer(registry, MetricRegistry.name("discovery", "cache", "lookup-latency"));
+        this.announces = vertx.eventBus().consumer(discovery.options().getAnnounceAddress(),
+            message -> announced(new Record(message.body())));
+    }
+
+    /**
+     * Gets the service of the given name and service type, from the cache when already retrieved.
+     *
+     * @param name        the name of the service
+     * @param serviceType the service type of the record, e.g. {@code HttpEndpoint.TYPE}
+     * @param type        the type of the service object, e.g. {@code WebClient} for an HTTP endpoint
+     * @param handler     the handler receiving the service, or a failure if there is no such service
+     * @param <T>         the type of the service object
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void get(String name, String serviceType, Class<T> type, Handler<AsyncResult<T>> handler) {
+        String key = key(serviceType, name);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.service != null) {
+            hits.mark();
+            handler.handle(Future.succeededFuture((T) entry.service));
+            return;
+        }
+        if (entry != null && entry.failure != null) {
+            if (System.currentTimeMillis() < entry.failedUntil) {
+                hits.mark();
+                handler.handle(entry.failure.map(service -> (T) service));
+                return;
+            }
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry != null) {
+            // Lookup in progress
+            entry.waiters.add(ar -> handler.handle(ar.map(service -> (T) service)));
+            return;
+        }
+        misses.mark();
+        Entry created = new Entry(type);
+        created.waiters.add(ar -> handler.handle(ar.map(service -> (T) service)));
+        entries.put(key, created);
+        long begin = System.nanoTime();
+        discovery.getRecord(new JsonObject().put("name", name).put("type", serviceType), ar -> {
+            lookupLatency.update(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+            List<Handler<AsyncResult<Object>>> waiters = created.waiters;
+            created.waiters = new ArrayList<>();
+            AsyncResult<Object> result;
+            if (entries.get(key) != created) {
+                // Unpublished meanwhile, the record may be stale
+                result = Future.failedFuture("The service " + name + " has been unpublished");
+            } else if (ar.failed()) {
+                result = Future.failedFuture(ar.cause());
+            } else if (ar.result() == null) {
+                result = Future.failedFuture("No service " + name);
+            } else {
+                result = resolve(created, ar.result());
+            }
+            if (result.failed() && entries.get(key) == created) {
+                if (failureTtl > 0) {
+                    created.failure = result;
+                    created.failedUntil = System.currentTimeMillis() + failureTtl;
+                } else {
+                    entries.remove(key);
+                }
+            }
+            notify(waiters, result);
+        });
+    }
+
+    /**
+     * Gets the service object of a record, and stores it in the entry.
+     */
+    private AsyncResult<Object> resolve(Entry entry, Record record) {
+        ServiceReference reference = discovery.getReference(record);
+        try {
+            Object service = reference.getAs(entry.type);
+            entry.reference = reference;
+            entry.service = service;
+            return Future.succeededFuture(service);
+        } catch (RuntimeException e) {
+            reference.release();
+            return Future.failedFuture(e);
+        }
+    }
+
+    private static String key(String serviceType, String name) {
+        return serviceType + "/" + name;
+    }
+
+    private static void notify(List<Handler<AsyncResult<Object>>> waiters, AsyncResult<Object> result) {
+        for (Handler<AsyncResult<Object>> waiter : waiters) {
+            waiter.handle(result);
+        }
+    }
+
+    private void announced(Record record) {
+        String key = key(record.getType(), record.getName());
+        Entry entry = entries.get(key);
+        if (entry == null || entry.reference == null) {
+            if (entry != null && (entry.failure != null || record.getStatus() != Status.UP)) {
+                // A failed lookup may succeed now, or the lookup in progress may get a stale record
+                entries.remove(key);
+            }
+            return;
+        }
+        String registration = entry.reference.record().getRegistration();
+        if (record.getStatus() == Status.UP) {
+            if (record.getRegistration() != null && !record.getRegistration().equals(registration)) {
+                // Published again, switch to the new record
+                ServiceReference former = entry.reference;
+                if (resolve(entry, record).failed()) {
+                    entries.remove(key);
+                }
+                former.release();
+            }
+        } else if (registration == null || registration.equals(record.getRegistration())) {
+            entries.remove(key);
+            entry.reference.release();
+        }
+    }
+
+    /**
+     * Releases the cached services and stops following the announces.
+     */
+    public void close() {
+        announces.unregister();
+        for (Entry entry : entries.values()) {
+            if (entry.reference != null) {
+                entry.reference.release();
+            }
+        }
+        entries.clear();
+    }
+}
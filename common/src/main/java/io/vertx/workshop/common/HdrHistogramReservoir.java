@@ -0,0 +1,130 @@
+package io.vertx.workshop.common;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+/**
+ * A Dropwizard {@link Reservoir} backed by an HdrHistogram {@link Recorder}: recording is wait-free and does not
+ * allocate, and the percentiles are exact (to the given number of significant digits) instead of sampled.
+ * <p>
+ * A snapshot reports the values recorded during the last interval: the recorded values are swapped out when a
+ * snapshot is requested at least {@code interval} ms after the previous swap, so concurrent scrapers get consistent
+ * values.
+ * </p>
+ */
+public class HdrHistogramReservoir implements Reservoir {
+
+    private final Recorder recorder;
+    private final long interval;
+
+    private Histogram current;
+    private long swapped;
+
+    /**
+     * Creates a reservoir with 3 significant digits and a 10 seconds interval.
+     */
+    public HdrHistogramReservoir() {
+        this(3, 10000);
+    }
+
+    /**
+     * Creates a new {@link HdrHistogramReservoir}.
+     *
+     * @param digits   the number of significant digits of the recorded values
+     * @param interval the minimum duration of an interval, in ms
+     */
+    public HdrHistogramReservoir(int digits, long interval) {
+        this.recorder = new Recorder(digits);
+        this.interval = interval;
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(long value) {
+        recorder.recordValue(Math.max(0, value));
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        long now = System.currentTimeMillis();
+        if (current == null || now - swapped >= interval) {
+            current = recorder.getIntervalHistogram(current);
+            swapped = now;
+        }
+        return new HdrSnapshot(current.copy());
+    }
+
+    private static final class HdrSnapshot extends Snapshot {
+
+        private final Histogram histogram;
+
+        private HdrSnapshot(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            return histogram.getValueAtPercentile(quantile * 100);
+        }
+
+        @Override
+        public long[] getValues() {
+            long[] values = new long[size()];
+            int i = 0;
+            for (HistogramIterationValue value : histogram.recordedValues()) {
+                long v = histogram.highestEquivalentValue(value.getValueIteratedTo());
+                for (long n = 0; n < value.getCountAtValueIteratedTo() && i < values.length; n++) {
+                    values[i++] = v;
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, histogram.getTotalCount());
+        }
+
+        @Override
+        public long getMax() {
+            return histogram.getMaxValue();
+        }
+
+        @Override
+        public double getMean() {
+            return histogram.getMean();
+        }
+
+        @Override
+        public long getMin() {
+            return histogram.getMinValue();
+        }
+
+        @Override
+        public double getStdDev() {
+            return histogram.getStdDeviation();
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (long value : getValues()) {
+                    out.println(value);
+                }
+            }
+        }
+    }
+}
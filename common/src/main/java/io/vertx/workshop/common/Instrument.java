@@ -0,0 +1,130 @@
+package io.vertx.workshop.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An instrument (company) traded on the market. Instruments are interned: there is a single instance per company
+ * name in a JVM, identified by a dense integer id. The UTF-8 representation of the name and symbol are computed once
+ * so the instrument can be written on the wire without encoding strings on every tick. Likewise, the per-symbol
+ * address of the company is computed once.
+ */
+public final class Instrument {
+
+    private static final Map<String, Instrument> INSTRUMENTS = new ConcurrentHashMap<>();
+    private static volatile Instrument[] byId = new Instrument[64];
+    private static int count;
+
+    private final int id;
+    private final String name;
+    private final String symbol;
+    private final byte[] nameBytes;
+    private final byte[] symbolBytes;
+    private final String address;
+
+    private Instrument(int id, String name, String symbol) {
+        this.id = id;
+        this.name = name;
+        this.symbol = symbol;
+        this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        this.symbolBytes = symbol.getBytes(StandardCharsets.UTF_8);
+        this.address = MarketSubscription.address(symbol);
+    }
+
+    /**
+     * Gets the interned instrument for the given company, creating it if needed.
+     *
+     * @param name   the name of the company
+     * @param symbol the symbol, the name is used if {@code null}
+     * @return the instrument
+     */
+    public static Instrument intern(String name, String symbol) {
+        Instrument instrument = INSTRUMENTS.get(name);
+        if (instrument != null && (symbol == null || instrument.symbol.equals(symbol))) {
+            return instrument;
+        }
+        return create(name, symbol == null ? name : symbol);
+    }
+
+    /**
+     * Gets the instrument registered with the given id.
+     *
+     * @param id the id
+     * @return the instrument, {@code null} if none
+     */
+    public static Instrument get(int id) {
+        Instrument[] instruments = byId;
+        return id >= 0 && id < instruments.length ? instruments[id] : null;
+    }
+
+    /**
+     * Gets the interned instrument of the given company, without creating it.
+     *
+     * @param name the name of the company
+     * @return the instrument, {@code null} if none
+     */
+    public static Instrument get(String name) {
+        return INSTRUMENTS.get(name);
+    }
+
+    private static synchronized Instrument create(String name, String symbol) {
+        Instrument existing = INSTRUMENTS.get(name);
+        if (existing != null && existing.symbol.equals(symbol)) {
+            return existing;
+        }
+        // A new company, or a company whose symbol changed: the id is reused in the latter case.
+        int id = existing != null ? existing.id : count++;
+        Instrument instrument = new Instrument(id, name, symbol);
+        Instrument[] instruments = byId;
+        if (id >= instruments.length) {
+            instruments = Arrays.copyOf(instruments, instruments.length * 2);
+        }
+        instruments[id] = instrument;
+        byId = instruments;
+        INSTRUMENTS.put(name, instrument);
+        return instrument;
+    }
+
+    /**
+     * @return the id of the instrument, only meaningful in the current JVM
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * @return the name of the company
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the symbol of the company
+     */
+    public String symbol() {
+        return symbol;
+    }
+
+    /**
+     * @return the event bus address on which the quotes of the company are published
+     */
+    public String address() {
+        return address;
+    }
+
+    byte[] nameBytes() {
+        return nameBytes;
+    }
+
+    byte[] symbolBytes() {
+        return symbolBytes;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + symbol + ")";
+    }
+}
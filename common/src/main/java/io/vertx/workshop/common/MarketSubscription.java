@@ -0,0 +1,156 @@
+package io.vertx.workshop.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A subscription to the quotes of some companies of the market.
+ * <p>
+ * Every quote is published on the aggregate {@code market} address and, when {@code per-symbol} is set in the
+ * metadata of the {@code market-data} record, on the address of its symbol ({@code market.symbol.<symbol>}, so a
+ * symbol never collides with the other {@code market.*} addresses, as {@code market.batch}). The metadata
+ * also lists the {@code instruments} of the market (name and symbol).
+ * </p>
+ * <p>
+ * The companies are selected by patterns, matching either the name or the symbol of the instruments: an exact value,
+ * a prefix followed by {@code *}, or {@code *} for the whole market. The patterns are expanded against the listed
+ * instruments, and a consumer is registered on the address of each matching symbol. When the market is not published
+ * per symbol, when a pattern matches no listed instrument (a company not known yet), or when the patterns select
+ * more than half of the market, a single consumer is registered on the aggregate address and the quotes are filtered
+ * locally.
+ * </p>
+ */
+public class MarketSubscription {
+
+    /**
+     * The aggregate address, on which all the quotes are published.
+     */
+    public static final String ADDRESS = "market";
+
+    /**
+     * The prefix of the per-symbol addresses.
+     */
+    public static final String SYMBOL_ADDRESS_PREFIX = ADDRESS + ".symbol.";
+
+    private final List<MessageConsumer<Quote>> consumers;
+
+    private MarketSubscription(List<MessageConsumer<Quote>> consumers) {
+        this.consumers = consumers;
+    }
+
+    /**
+     * Gets the address on which the quotes of a symbol are published.
+     *
+     * @param symbol the symbol
+     * @return the address
+     */
+    public static String address(String symbol) {
+        return SYMBOL_ADDRESS_PREFIX + symbol;
+    }
+
+    /**
+     * Creates the metadata of the {@code market-data} record, describing the per-symbol addresses.
+     *
+     * @param instruments the instruments of the market
+     * @return the metadata
+     */
+    public static JsonObject metadata(Iterable<Instrument> instruments) {
+        JsonArray array = new JsonArray();
+        for (Instrument instrument : instruments) {
+            array.add(new JsonObject().put("name", instrument.name()).put("symbol", instrument.symbol()));
+        }
+        return new JsonObject().put("per-symbol", true).put("instruments", array);
+    }
+
+    /**
+     * Subscribes to the quotes of the companies matching the given patterns.
+     *
+     * @param eventBus the event bus
+     * @param metadata the metadata of the {@code market-data} record
+     * @param patterns the patterns selecting the companies
+     * @param handler  the handler receiving the quotes
+     * @return the subscription
+     */
+    public static MarketSubscription subscribe(EventBus eventBus, JsonObject metadata, Collection<String> patterns,
+                                               Handler<Quote> handler) {
+        List<Predicate<String>> matchers = new ArrayList<>();
+        boolean all = false;
+        for (String pattern : patterns) {
+            if (pattern.equals("*")) {
+                all = true;
+            } else if (pattern.endsWith("*")) {
+                String prefix = pattern.substring(0, pattern.length() - 1);
+                matchers.add(value -> value.startsWith(prefix));
+            } else {
+                matchers.add(pattern::equals);
+            }
+        }
+        Predicate<String> matches = value -> matchers.stream().anyMatch(m -> m.test(value));
+
+        JsonArray instruments = metadata == null ? null : metadata.getJsonArray("instruments");
+        List<MessageConsumer<Quote>> consumers = new ArrayList<>();
+        if (all) {
+            consumers.add(eventBus.<Quote>consumer(ADDRESS, message -> handler.handle(message.body())));
+            return new MarketSubscription(consumers);
+        }
+
+        if (metadata != null && metadata.getBoolean("per-symbol", false) && instruments != null) {
+            Set<String> symbols = new LinkedHashSet<>();
+            for (int i = 0; i < instruments.size(); i++) {
+                JsonObject instrument = instruments.getJsonObject(i);
+                if (matches.test(instrument.getString("name")) || matches.test(instrument.getString("symbol"))) {
+                    symbols.add(instrument.getString("symbol"));
+                }
+            }
+            boolean resolved = patterns.stream().allMatch(pattern -> pattern.endsWith("*")
+                || instruments.stream().map(JsonObject.class::cast).anyMatch(instrument ->
+                    pattern.equals(instrument.getString("name")) || pattern.equals(instrument.getString("symbol"))));
+            if (resolved && symbols.size() * 2 <= instruments.size()) {
+                for (String symbol : symbols) {
+                    consumers.add(eventBus.<Quote>consumer(address(symbol),
+                        message -> handler.handle(message.body())));
+                }
+                return new MarketSubscription(consumers);
+            }
+        }
+
+        // Aggregate subscription
+        consumers.add(eventBus.<Quote>consumer(ADDRESS, message -> {
+            Quote quote = message.body();
+            if (matches.test(quote.getName()) || matches.test(quote.getSymbol())) {
+                handler.handle(quote);
+            }
+        }));
+        return new MarketSubscription(consumers);
+    }
+
+    /**
+     * @return the addresses of the registered consumers
+     */
+    public List<String> addresses() {
+        List<String> addresses = new ArrayList<>();
+        for (MessageConsumer<Quote> consumer : consumers) {
+            addresses.add(consumer.address());
+        }
+        return addresses;
+    }
+
+    /**
+     * Unregisters the consumers of the subscription.
+     */
+    public void unregister() {
+        for (MessageConsumer<Quote> consumer : consumers) {
+            consumer.unregister();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package io.vertx.workshop.common;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.dropwizard.DropwizardExports;
+import io.prometheus.client.exporter.common.TextFormat;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Helpers shared by the services to record their metrics in the Dropwizard registry of vert.x and expose them in the
+ * Prometheus text format.
+ */
+public final class Metrics {
+
+    /**
+     * The content type of the Prometheus text format.
+     */
+    public static final String PROMETHEUS_CONTENT_TYPE = TextFormat.CONTENT_TYPE_004;
+
+    private static final Map<MetricRegistry, CollectorRegistry> EXPORTS = new ConcurrentHashMap<>();
+
+    private Metrics() {
+        // Utility class
+    }
+
+    /**
+     * @return the registry used by the vert.x Dropwizard metrics ({@code vertx.metrics.options.registryName})
+     */
+    public static MetricRegistry registry() {
+        return SharedMetricRegistries.getOrCreate(
+            System.getProperty("vertx.metrics.options.registryName", "vertx-dw"));
+    }
+
+    /**
+     * Gets or creates a timer recording its durations in an {@link HdrHistogramReservoir}.
+     *
+     * @param registry the registry
+     * @param name     the name of the timer
+     * @return the timer
+     */
+    public static Timer timer(MetricRegistry registry, String name) {
+        return registry.timer(name, () -> new Timer(new HdrHistogramReservoir()));
+    }
+
+    /**
+     * Creates a service proxy interceptor marking a meter per action ({@code <prefix>.requests.<action>}) for each
+     * request received on the service address. The requests are never rejected.
+     *
+     * @param registry the registry
+     * @param prefix   the prefix of the meter names
+     * @return the interceptor
+     */
+    public static Function<Message<JsonObject>, Future<Message<JsonObject>>> requestMeter(MetricRegistry registry,
+                                                                                        String prefix) {
+        Map<String, Meter> meters = new ConcurrentHashMap<>();
+        return message -> {
+            String action = message.headers().get("action");
+            meters.computeIfAbsent(action == null ? "unknown" : action,
+                a -> registry.meter(MetricRegistry.name(prefix, "requests", a))).mark();
+            return Future.succeededFuture(message);
+        };
+    }
+
+    /**
+     * Writes the metrics of the given registry in the Prometheus text format.
+     *
+     * @param registry the registry
+     * @return the metrics
+     */
+    public static String scrape(MetricRegistry registry) {
+        CollectorRegistry exports = EXPORTS.computeIfAbsent(registry, r -> {
+            CollectorRegistry collectors = new CollectorRegistry();
+            collectors.register(new DropwizardExports(r));
+            return collectors;
+        });
+        StringWriter writer = new StringWriter();
+        try {
+            TextFormat.write004(writer, exports.metricFamilySamples());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package io.vertx.workshop.common;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * An immutable market data tick. Quotes are sent on the event bus using the {@link QuoteCodec}: local consumers
+ * receive the very same instance, remote consumers decode a fixed-layout binary representation. The Json
+ * representation is only computed when requested, typically at the HTTP and SockJS edges.
+ */
+public final class Quote {
+
+    /**
+     * The exchange on which all the quotes are emitted.
+     */
+    public static final String EXCHANGE = "Vert.x stock exchange";
+
+    private final Instrument instrument;
+    private final double bid;
+    private final double ask;
+    private final int volume;
+    private final double open;
+    private final int shares;
+    private final long timestamp;
+
+    private volatile JsonObject json;
+
+    /**
+     * Creates a new {@link Quote}.
+     *
+     * @param instrument the instrument
+     * @param bid        the bid price
+     * @param ask        the ask price
+     * @param volume     the total number of shares of the company
+     * @param open       the open price
+     * @param shares     the number of shares available on the market
+     * @param timestamp  the time at which the quote has been emitted
+     */
+    public Quote(Instrument instrument, double bid, double ask, int volume, double open, int shares, long timestamp) {
+        this.instrument = instrument;
+        this.bid = bid;
+        this.ask = ask;
+        this.volume = volume;
+        this.open = open;
+        this.shares = shares;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Creates a {@link Quote} from its Json representation.
+     *
+     * @param json the json object
+     * @return the quote
+     */
+    public static Quote fromJson(JsonObject json) {
+        Quote quote = new Quote(Instrument.intern(json.getString("name"), json.getString("symbol")),
+            json.getDouble("bid", 0.0),
+            json.getDouble("ask", 0.0),
+            json.getInteger("volume", 0),
+            json.getDouble("open", 0.0),
+            json.getInteger("shares", 0),
+            json.getLong("date", System.currentTimeMillis()));
+        quote.json = json;
+        return quote;
+    }
+
+    /**
+     * Gets the Json representation of the quote. It is computed on first access and then cached, so the returned
+     * object must not be modified.
+     *
+     * @return the json representation
+     */
+    public JsonObject toJson() {
+        JsonObject result = json;
+        if (result == null) {
+            result = new JsonObject()
+                .put("exchange", EXCHANGE)
+                .put("symbol", instrument.symbol())
+                .put("name", instrument.name())
+                .put("bid", bid)
+                .put("ask", ask)
+                .put("volume", volume)
+                .put("open", open)
+                .put("shares", shares);
+            json = result;
+        }
+        return result;
+    }
+
+    public Instrument getInstrument() {
+        return instrument;
+    }
+
+    public String getName() {
+        return instrument.name();
+    }
+
+    public String getSymbol() {
+        return instrument.symbol();
+    }
+
+    public double getBid() {
+        return bid;
+    }
+
+    public double getAsk() {
+        return ask;
+    }
+
+    public int getVolume() {
+        return volume;
+    }
+
+    public double getOpen() {
+        return open;
+    }
+
+    public int getShares() {
+        return shares;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "Quote{" + instrument + ", bid=" + bid + ", ask=" + ask + ", shares=" + shares + "}";
+    }
+}
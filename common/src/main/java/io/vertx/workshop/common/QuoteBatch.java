@@ -0,0 +1,41 @@
+package io.vertx.workshop.common;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * An immutable batch of {@link Quote}s emitted together, sent on the event bus using the {@link QuoteBatchCodec}.
+ * Batches let the market simulator publish thousands of ticks with a single message.
+ */
+public final class QuoteBatch implements Iterable<Quote> {
+
+    private final Quote[] quotes;
+    private final int size;
+
+    /**
+     * Creates a new {@link QuoteBatch}. The array is not copied and must not be modified afterwards.
+     *
+     * @param quotes the quotes
+     * @param size   the number of quotes from the array to include in the batch
+     */
+    public QuoteBatch(Quote[] quotes, int size) {
+        this.quotes = quotes;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Quote get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return quotes[index];
+    }
+
+    @Override
+    public Iterator<Quote> iterator() {
+        return Arrays.asList(quotes).subList(0, size).iterator();
+    }
+}
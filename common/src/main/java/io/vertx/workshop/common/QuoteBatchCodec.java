@@ -0,0 +1,68 @@
+package io.vertx.workshop.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * The event bus codec for {@link QuoteBatch}. The wire layout is the number of quotes (int) followed by each quote
+ * using the {@link QuoteCodec} layout.
+ */
+public class QuoteBatchCodec implements MessageCodec<QuoteBatch, QuoteBatch> {
+
+    /**
+     * The name of the codec.
+     */
+    public static final String NAME = "quote-batch";
+
+    private final QuoteCodec codec = new QuoteCodec();
+
+    /**
+     * Registers the codec as default codec for {@link QuoteBatch} on the event bus of the given vert.x instance, if
+     * not already done.
+     *
+     * @param vertx the vert.x instance
+     */
+    public static void register(Vertx vertx) {
+        try {
+            vertx.eventBus().registerDefaultCodec(QuoteBatch.class, new QuoteBatchCodec());
+        } catch (IllegalStateException e) {
+            // Already registered by another verticle
+        }
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, QuoteBatch batch) {
+        buffer.appendInt(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            codec.encodeToWire(buffer, batch.get(i));
+        }
+    }
+
+    @Override
+    public QuoteBatch decodeFromWire(int pos, Buffer buffer) {
+        int size = buffer.getInt(pos);
+        pos += 4;
+        Quote[] quotes = new Quote[size];
+        for (int i = 0; i < size; i++) {
+            quotes[i] = codec.decodeFromWire(pos, buffer);
+            pos += QuoteCodec.wireSize(pos, buffer);
+        }
+        return new QuoteBatch(quotes, size);
+    }
+
+    @Override
+    public QuoteBatch transform(QuoteBatch batch) {
+        return batch;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -0,0 +1,141 @@
+package io.vertx.workshop.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The event bus codec for {@link Quote}. Quotes are immutable, so local deliveries share the sent instance.
+ * <p>
+ * The wire layout is: the sender instrument id (int), the name and the symbol (each as a short length followed by
+ * the UTF-8 bytes), bid (double), ask (double), volume (int), open (double), shares (int) and timestamp (long).
+ * Instrument ids are only meaningful in the sender JVM, so the receiver keeps the instrument previously decoded for
+ * each sender id and reuses it when the name and symbol bytes match, avoiding any string allocation per tick.
+ * </p>
+ */
+public class QuoteCodec implements MessageCodec<Quote, Quote> {
+
+    /**
+     * The name of the codec, shared by all the codecs able to decode a {@link Quote}.
+     */
+    public static final String NAME = "quote";
+
+    private volatile Instrument[] decoded = new Instrument[64];
+
+    /**
+     * Registers the codec as default codec for {@link Quote} on the event bus of the given vert.x instance, if not
+     * already done.
+     *
+     * @param vertx the vert.x instance
+     */
+    public static void register(Vertx vertx) {
+        try {
+            vertx.eventBus().registerDefaultCodec(Quote.class, new QuoteCodec());
+        } catch (IllegalStateException e) {
+            // Already registered by another verticle
+        }
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, Quote quote) {
+        Instrument instrument = quote.getInstrument();
+        buffer.appendInt(instrument.id());
+        buffer.appendShort((short) instrument.nameBytes().length).appendBytes(instrument.nameBytes());
+        buffer.appendShort((short) instrument.symbolBytes().length).appendBytes(instrument.symbolBytes());
+        buffer.appendDouble(quote.getBid())
+            .appendDouble(quote.getAsk())
+            .appendInt(quote.getVolume())
+            .appendDouble(quote.getOpen())
+            .appendInt(quote.getShares())
+            .appendLong(quote.getTimestamp());
+    }
+
+    @Override
+    public Quote decodeFromWire(int pos, Buffer buffer) {
+        int id = buffer.getInt(pos);
+        pos += 4;
+        int nameLength = buffer.getShort(pos);
+        int namePos = pos + 2;
+        pos = namePos + nameLength;
+        int symbolLength = buffer.getShort(pos);
+        int symbolPos = pos + 2;
+        pos = symbolPos + symbolLength;
+
+        Instrument instrument = instrument(id, buffer, namePos, nameLength, symbolPos, symbolLength);
+        return new Quote(instrument,
+            buffer.getDouble(pos),
+            buffer.getDouble(pos + 8),
+            buffer.getInt(pos + 16),
+            buffer.getDouble(pos + 20),
+            buffer.getInt(pos + 28),
+            buffer.getLong(pos + 32));
+    }
+
+    /**
+     * Computes the size of the encoded quote starting at the given position.
+     *
+     * @param pos    the position of the encoded quote
+     * @param buffer the buffer
+     * @return the number of bytes used by the quote
+     */
+    static int wireSize(int pos, Buffer buffer) {
+        int nameLength = buffer.getShort(pos + 4);
+        int symbolLength = buffer.getShort(pos + 6 + nameLength);
+        // id, the two lengths and the name and symbol bytes, then 3 doubles, 2 ints and a long
+        return 8 + nameLength + symbolLength + 40;
+    }
+
+    @Override
+    public Quote transform(Quote quote) {
+        return quote;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+
+    private Instrument instrument(int id, Buffer buffer, int namePos, int nameLength, int symbolPos, int symbolLength) {
+        Instrument[] cache = decoded;
+        if (id >= 0 && id < cache.length) {
+            Instrument cached = cache[id];
+            if (cached != null
+                && matches(buffer, namePos, nameLength, cached.nameBytes())
+                && matches(buffer, symbolPos, symbolLength, cached.symbolBytes())) {
+                return cached;
+            }
+        }
+        Instrument instrument = Instrument.intern(
+            new String(buffer.getBytes(namePos, namePos + nameLength), StandardCharsets.UTF_8),
+            new String(buffer.getBytes(symbolPos, symbolPos + symbolLength), StandardCharsets.UTF_8));
+        if (id >= 0) {
+            // Racy but safe: a lost update only costs another lookup.
+            if (id >= cache.length) {
+                cache = Arrays.copyOf(cache, Math.max(cache.length * 2, id + 1));
+            }
+            cache[id] = instrument;
+            decoded = cache;
+        }
+        return instrument;
+    }
+
+    private static boolean matches(Buffer buffer, int pos, int length, byte[] bytes) {
+        if (length != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.getByte(pos + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,56 @@
+package io.vertx.workshop.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A codec reading the {@link Quote} wire format and delivering the Json representation. It is meant for the edges
+ * (SockJS bridge, HTTP) that forward the quotes as Json and so would convert each of them anyway.
+ * <p>
+ * It uses the same name as the {@link QuoteCodec}, and so must be registered instead of it.
+ * </p>
+ */
+public class QuoteJsonCodec implements MessageCodec<Quote, JsonObject> {
+
+    private final QuoteCodec codec = new QuoteCodec();
+
+    /**
+     * Registers the codec on the event bus of the given vert.x instance, if not already done.
+     *
+     * @param vertx the vert.x instance
+     */
+    public static void register(Vertx vertx) {
+        try {
+            vertx.eventBus().registerCodec(new QuoteJsonCodec());
+        } catch (IllegalStateException e) {
+            // Already registered by another verticle
+        }
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, Quote quote) {
+        codec.encodeToWire(buffer, quote);
+    }
+
+    @Override
+    public JsonObject decodeFromWire(int pos, Buffer buffer) {
+        return codec.decodeFromWire(pos, buffer).toJson();
+    }
+
+    @Override
+    public JsonObject transform(Quote quote) {
+        return quote.toJson().copy();
+    }
+
+    @Override
+    public String name() {
+        return QuoteCodec.NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -1,15 +1,21 @@
 package io.vertx.workshop.trader.impl;
 
+import java.util.Collections;
+
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
-import io.vertx.core.eventbus.MessageConsumer;
-import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.Record;
 import io.vertx.servicediscovery.types.EventBusService;
-import io.vertx.servicediscovery.types.MessageSource;
 import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.workshop.common.Conflator;
+import io.vertx.workshop.common.MarketSubscription;
+import io.vertx.workshop.common.Metrics;
+import io.vertx.workshop.common.Quote;
+import io.vertx.workshop.common.QuoteCodec;
+import io.vertx.workshop.portfolio.InstrumentedPortfolioService;
 import io.vertx.workshop.portfolio.PortfolioService;
 
 /**
@@ -19,11 +25,15 @@ public class CallbackTraderVerticle extends AbstractVerticle {
 
     @Override
     public void start(Future<Void> done) throws Exception {
-        
-        String company = TraderUtils.pickACompany();
+
+        QuoteCodec.register(vertx);
+
+        String company = TraderUtils.pickACompany(config());
 
         int numberOfShares = TraderUtils.pickANumber();
 
+        String account = config().getString("account", PortfolioService.DEFAULT_ACCOUNT);
+
         System.out.println("Java-Callback compulsive trader configured for company " + company + " and shares " + numberOfShares);
 
         // TODO: Complete the code to apply the trading logic on each message received from the "market-data" message source
@@ -42,11 +52,12 @@ public class CallbackTraderVerticle extends AbstractVerticle {
             // TODO 3 - Attach a handler on the composite future, and call initialize
 
             Future<PortfolioService> retrieveThePortfolioService = getPortfolioService(discovery.result());
-            Future<MessageConsumer<JsonObject>> retrieveTheMarket = getMarketSource(discovery.result());
+            Future<Record> retrieveTheMarket = getMarketSource(discovery.result());
 
             CompositeFuture.all(retrieveServiceDiscovery, retrieveTheMarket)
                 .setHandler(ar -> {
                     initialize(done, 
+                            account,
                             company, 
                             numberOfShares, 
                             retrieveThePortfolioService, 
@@ -78,31 +89,47 @@ public class CallbackTraderVerticle extends AbstractVerticle {
         return future;
     }
 
-    private Future<MessageConsumer<JsonObject>> getMarketSource(ServiceDiscovery discovery) {
-        Future<MessageConsumer<JsonObject>> future = Future.future();
-        MessageSource.getConsumer(discovery,
-                record -> record.getName().equalsIgnoreCase("market-data"),
-                future
-        );
+    private Future<Record> getMarketSource(ServiceDiscovery discovery) {
+        Future<Record> future = Future.future();
+        discovery.getRecord(record -> record.getName().equalsIgnoreCase("market-data"), ar -> {
+            if (ar.succeeded() && ar.result() == null) {
+                future.fail("No market-data message source");
+            } else {
+                future.handle(ar);
+            }
+        });
         return future;
     }
 
     private void initialize(
         Future<Void> done,
+        String account,
         String company,
         int numberOfShares,
         Future<PortfolioService> retrieveThePortfolioSerivce,
-        Future<MessageConsumer<JsonObject>> retrieveTheMarket,
+        Future<Record> retrieveTheMarket,
         AsyncResult<CompositeFuture> ar
     ) {
 
         if (ar.failed()) {
             done.fail(ar.cause());
         } else {
-            PortfolioService portfolio = retrieveThePortfolioSerivce.result();
-            MessageConsumer<JsonObject> consumer = retrieveTheMarket.result();
-            consumer.handler(
-                message -> TraderUtils.dumbTradingLogic(company, numberOfShares, portfolio, message.body()));
+            // Record the latency of the calls made by the trader
+            PortfolioService portfolio = new InstrumentedPortfolioService(retrieveThePortfolioSerivce.result(),
+                Metrics.registry(), "trader.portfolio");
+            // Send the orders in batches when a batch window is configured
+            OrderBatcher batcher = TraderUtils.batcher(vertx, config(), account, portfolio);
+            // Only trade on the latest quote of the company, at most max-rate times per second
+            Conflator<Quote> conflator = TraderUtils.conflator(vertx, config(), quote -> {
+                if (batcher != null) {
+                    TraderUtils.dumbTradingLogic(company, numberOfShares, batcher, quote);
+                } else {
+                    TraderUtils.dumbTradingLogic(account, company, numberOfShares, portfolio, quote);
+                }
+            });
+            // Only receive the quotes of the company
+            MarketSubscription.subscribe(vertx.eventBus(), retrieveTheMarket.result().getMetadata(),
+                Collections.singletonList(company), conflator::offer);
             done.complete();
         }
 
@@ -1,19 +1,34 @@
 package io.vertx.workshop.trader.impl;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.workshop.common.Metrics;
 
 
 /**
- * The main verticle creating compulsive traders.
+ * The main verticle creating compulsive traders. The configuration (traded {@code companies}, {@code account},
+ * maximum trading rate {@code max-rate}, and {@code batch-window} / {@code batch-size} to send the orders in batches
+ * accumulated over a window of milliseconds) is passed to the traders. When {@code metrics.port} is set, the latency
+ * of the calls made by the traders is served in the Prometheus format on {@code /metrics}.
  */
 public class MainVerticle extends AbstractVerticle {
 
     @Override
     public void start() {
-        vertx.deployVerticle(CallbackTraderVerticle.class.getName());
+        DeploymentOptions options = new DeploymentOptions().setConfig(config());
+        vertx.deployVerticle(CallbackTraderVerticle.class.getName(), options);
         System.out.println("The callback-based trader verticle deployed");
-        vertx.deployVerticle(RXCompulsiveTraderVerticle.class.getName());
-        System.out.println("The RX compulsive trader verticle deployed");        
+        vertx.deployVerticle(RXCompulsiveTraderVerticle.class.getName(), options);
+        System.out.println("The RX compulsive trader verticle deployed");
+
+        Integer port = config().getInteger("metrics.port");
+        if (port != null) {
+            vertx.createHttpServer()
+                .requestHandler(request -> request.response()
+                    .putHeader("content-type", Metrics.PROMETHEUS_CONTENT_TYPE)
+                    .end(Metrics.scrape(Metrics.registry())))
+                .listen(port);
+        }
     }
 
 }
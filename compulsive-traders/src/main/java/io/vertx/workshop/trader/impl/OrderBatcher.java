@@ -0,0 +1,124 @@
+package io.vertx.workshop.trader.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Single;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.impl.AsyncResultSingle;
+import io.vertx.workshop.portfolio.PortfolioService;
+
+/**
+ * Accumulates the orders of a trader over a short window and submits them to the portfolio service in a single
+ * call, see {@link PortfolioService#submitOrders(String, List, Handler)}, so the trader pays one event bus round trip
+ * per batch rather than per order.
+ * <p>
+ * The window starts with the first order of a batch, and the batch is submitted when the window ends or when it holds
+ * {@code maxSize} orders, whichever comes first. Each order is then completed with its own status: a rejected order
+ * is reported as a failure.
+ * </p>
+ * <p>
+ * A batcher is not thread-safe, it must be used from the context (event loop) of the trader.
+ * </p>
+ */
+public class OrderBatcher {
+
+    private final Vertx vertx;
+    private final PortfolioService portfolio;
+    private final String account;
+    private final long window;
+    private final int maxSize;
+
+    private List<JsonObject> orders = new ArrayList<>();
+    private List<Handler<AsyncResult<JsonObject>>> handlers = new ArrayList<>();
+    private long timer = -1;
+
+    /**
+     * Creates a new {@link OrderBatcher}.
+     *
+     * @param vertx     the vert.x instance
+     * @param portfolio the portfolio service
+     * @param account   the account of the trader
+     * @param window    the time the orders are accumulated, in milliseconds
+     * @param maxSize   the maximum number of orders of a batch, at most {@link PortfolioService#MAX_BATCH_SIZE}
+     */
+    public OrderBatcher(Vertx vertx, PortfolioService portfolio, String account, long window, int maxSize) {
+        if (window <= 0 || maxSize <= 0 || maxSize > PortfolioService.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("The window must be positive and the size between 1 and "
+                + PortfolioService.MAX_BATCH_SIZE);
+        }
+        this.vertx = vertx;
+        this.portfolio = portfolio;
+        this.account = account;
+        this.window = window;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Adds a buy or a sell to the current batch, priced by the portfolio service.
+     *
+     * @param action  {@code BUY} or {@code SELL}
+     * @param name    the name of the company
+     * @param amount  the amount
+     * @param handler the handler called with the order status once the batch is executed
+     */
+    public void submit(String action, String name, int amount, Handler<AsyncResult<JsonObject>> handler) {
+        orders.add(new JsonObject().put("action", action).put("name", name).put("amount", amount));
+        handlers.add(handler);
+        if (orders.size() >= maxSize) {
+            flush();
+        } else if (timer == -1) {
+            timer = vertx.setTimer(window, id -> {
+                timer = -1;
+                flush();
+            });
+        }
+    }
+
+    /**
+     * Adds a buy or a sell to the current batch, priced by the portfolio service.
+     *
+     * @param action {@code BUY} or {@code SELL}
+     * @param name   the name of the company
+     * @param amount the amount
+     * @return a single emitting the order status once the batch is executed
+     */
+    public Single<JsonObject> rxSubmit(String action, String name, int amount) {
+        return new AsyncResultSingle<>(handler -> submit(action, name, amount, handler));
+    }
+
+    /**
+     * Submits the current batch now, if it is not empty.
+     */
+    public void flush() {
+        if (timer != -1) {
+            vertx.cancelTimer(timer);
+            timer = -1;
+        }
+        if (orders.isEmpty()) {
+            return;
+        }
+        List<JsonObject> batch = orders;
+        List<Handler<AsyncResult<JsonObject>>> waiting = handlers;
+        orders = new ArrayList<>();
+        handlers = new ArrayList<>();
+        portfolio.submitOrders(account, batch, ar -> {
+            for (int i = 0; i < waiting.size(); i++) {
+                if (ar.failed()) {
+                    waiting.get(i).handle(Future.failedFuture(ar.cause()));
+                    continue;
+                }
+                JsonObject status = ar.result().get(i);
+                if ("REJECTED".equals(status.getString("status"))) {
+                    waiting.get(i).handle(Future.failedFuture(status.getString("message")));
+                } else {
+                    waiting.get(i).handle(Future.succeededFuture(status));
+                }
+            }
+        });
+    }
+}
@@ -1,13 +1,19 @@
 package io.vertx.workshop.trader.impl;
 
+import java.util.Collections;
+
 import io.reactivex.Single;
 import io.vertx.core.Future;
-import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.CompletableHelper;
 import io.vertx.reactivex.core.AbstractVerticle;
-import io.vertx.reactivex.core.eventbus.MessageConsumer;
 import io.vertx.reactivex.servicediscovery.ServiceDiscovery;
-import io.vertx.reactivex.servicediscovery.types.MessageSource;
+import io.vertx.servicediscovery.Record;
+import io.vertx.workshop.common.Conflator;
+import io.vertx.workshop.common.MarketSubscription;
+import io.vertx.workshop.common.Metrics;
+import io.vertx.workshop.common.Quote;
+import io.vertx.workshop.common.QuoteCodec;
+import io.vertx.workshop.portfolio.InstrumentedPortfolioService;
 import io.vertx.workshop.portfolio.reactivex.PortfolioService;
 
 /**
@@ -18,11 +24,14 @@ public class RXCompulsiveTraderVerticle extends AbstractVerticle {
     @Override
     public void start(Future<Void> future) {
 
+        QuoteCodec.register(vertx.getDelegate());
 
-        String company = TraderUtils.pickACompany();
+        String company = TraderUtils.pickACompany(config());
 
         int numberOfShares = TraderUtils.pickANumber();
 
+        String account = config().getString("account", io.vertx.workshop.portfolio.PortfolioService.DEFAULT_ACCOUNT);
+
         System.out.println("Java-RX compulsive trader configured for company " + company + " and shares: " + numberOfShares);
 
         ServiceDiscovery.create(vertx, discovery -> {
@@ -31,27 +40,42 @@ public class RXCompulsiveTraderVerticle extends AbstractVerticle {
                 PortfolioService.class, 
                 record -> record.getName().equalsIgnoreCase("portfolio"));
 
-            Single<MessageConsumer<JsonObject>> retrieveTheMarket = MessageSource.rxGetConsumer(discovery, 
-                record -> record.getName().equalsIgnoreCase("market-data"));
+            Single<Record> retrieveTheMarket = discovery
+                .rxGetRecord(record -> record.getName().equalsIgnoreCase("market-data"))
+                .toSingle();
 
             // TODO 1 - "Wait" for both single to be completed (using Single.zip or Single.zipWith methods)
-            retrieveThePortfolioService.zipWith(retrieveTheMarket, (ps, consumer) -> {
+            retrieveThePortfolioService
+                // Record the latency of the calls made by the trader
+                .map(ps -> PortfolioService.newInstance(new InstrumentedPortfolioService(ps.getDelegate(),
+                    Metrics.registry(), "trader.portfolio")))
+                .zipWith(retrieveTheMarket, (ps, market) -> {
 
                 // TODO 2 - When both single have completed, attach the handler to the message consumer to
                 // execute the trading logic
-                consumer.handler(message -> 
+                // Send the orders in batches when a batch window is configured
+                OrderBatcher batcher = TraderUtils.batcher(vertx.getDelegate(), config(), account,
+                    ps.getDelegate());
+                // Only trade on the latest quote of the company, at most max-rate times per second
+                Conflator<Quote> conflator = TraderUtils.conflator(vertx.getDelegate(), config(), quote ->
 
                     // TODO 3 - Use the TradingUtils.dumbTradingLogic method returning a Completable. 
                     // Don't forget to subscribe to it, or nothing will happen. Return 'true' to comply 
                     // with the "zip" operator signature.
 
-                    TraderUtils.dumbTradingLogic(
-                        company, 
-                        numberOfShares,
-                        ps,
-                        message.body()
-                    )
+                    (batcher != null
+                        ? TraderUtils.rxDumbTradingLogic(company, numberOfShares, batcher, quote)
+                        : TraderUtils.dumbTradingLogic(
+                            account,
+                            company, 
+                            numberOfShares,
+                            ps,
+                            quote
+                        ))
                     .subscribe());
+                // Only receive the quotes of the company
+                MarketSubscription.subscribe(vertx.eventBus().getDelegate(), market.getMetadata(),
+                    Collections.singletonList(company), conflator::offer);
                     // We need to return something as requested by the "zip" signature.
                 return true;
             })
@@ -1,9 +1,16 @@
 package io.vertx.workshop.trader.impl;
 
 import io.reactivex.Completable;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.common.Conflator;
+import io.vertx.workshop.common.Quote;
 import io.vertx.workshop.portfolio.PortfolioService;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -19,16 +26,70 @@ public class TraderUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TraderUtils.class);
 
+    /**
+     * The companies traded when none are configured.
+     */
+    private static final List<String> DEFAULT_COMPANIES = Arrays.asList("Divinator", "MacroHard");
+
     public static String pickACompany() {
-        int choice = RAMDOM.nextInt(2);
-        switch (choice) {
-            case 0:
-                return "Divinator";
-            case 1:
-                return "MacroHard";
-            default:
-                return "Black Coat";
+        return pickACompany(DEFAULT_COMPANIES);
+    }
+
+    /**
+     * Picks one of the given companies.
+     *
+     * @param companies the names of the companies, the default ones if {@code null} or empty
+     * @return the name of the picked company
+     */
+    public static String pickACompany(List<String> companies) {
+        if (companies == null || companies.isEmpty()) {
+            companies = DEFAULT_COMPANIES;
+        }
+        return companies.get(RAMDOM.nextInt(companies.size()));
+    }
+
+    /**
+     * Picks one of the companies listed in the {@code companies} entry of the given configuration.
+     *
+     * @param config the trader configuration
+     * @return the name of the picked company
+     */
+    @SuppressWarnings("unchecked")
+    public static String pickACompany(JsonObject config) {
+        JsonArray companies = config.getJsonArray("companies");
+        return pickACompany(companies == null ? null : (List<String>) companies.getList());
+    }
+
+    /**
+     * Creates the conflator delivering the quotes to a trader, at most {@code max-rate} times per second (1 by
+     * default) as configured in the given configuration.
+     *
+     * @param vertx   the vert.x instance
+     * @param config  the trader configuration
+     * @param handler the trading logic
+     * @return the conflator, keeping the latest quote of each company
+     */
+    public static Conflator<Quote> conflator(Vertx vertx, JsonObject config, Handler<Quote> handler) {
+        return new Conflator<>(vertx, Quote::getName, config.getDouble("max-rate", 1.0), handler);
+    }
+
+    /**
+     * Creates the batcher accumulating the orders of a trader for {@code batch-window} milliseconds, in batches of
+     * at most {@code batch-size} orders, as configured in the given configuration.
+     *
+     * @param vertx     the vert.x instance
+     * @param config    the trader configuration
+     * @param account   the account of the trader
+     * @param portfolio the portfolio service
+     * @return the batcher, {@code null} if no batch window is configured: the orders are then sent one by one
+     */
+    public static OrderBatcher batcher(Vertx vertx, JsonObject config, String account, PortfolioService portfolio) {
+        long window = config.getLong("batch-window", 0L);
+        if (window <= 0) {
+            return null;
         }
+        return new OrderBatcher(vertx, portfolio, account, window,
+            config.getInteger("batch-size", PortfolioService.MAX_BATCH_SIZE));
     }
 
     public static boolean timeToSell() {
@@ -39,13 +100,14 @@ public class TraderUtils {
         return RAMDOM.nextInt(6) + 1;
     }
 
-    public static void dumbTradingLogic(String company, 
+    public static void dumbTradingLogic(String account,
+            String company, 
             int numberOfShares, 
             PortfolioService portfolio, 
-            JsonObject quote) {
-        if (quote.getString("name").equals(company)) {
+            Quote quote) {
+        if (quote.getName().equals(company)) {
             if (TraderUtils.timeToSell()) {
-                portfolio.sell(numberOfShares, quote, p -> {
+                portfolio.sellShares(account, company, numberOfShares, p -> {
                     if (p.succeeded()) {
                         System.out.println("Sold " + numberOfShares + " of " + company + "!");
                     } else {
@@ -53,7 +115,7 @@ public class TraderUtils {
                     }
                 });
             } else {
-                portfolio.buy(numberOfShares, quote, p -> {
+                portfolio.buyShares(account, company, numberOfShares, p -> {
                     if (p.succeeded()) {
                         System.out.println("Bought " + numberOfShares + " of " + company + "!");
                     } else {
@@ -65,22 +127,23 @@ public class TraderUtils {
     }
 
     public static Completable dumbTradingLogic(
+        String account,
         String company,
         int numberOfShares,
         io.vertx.workshop.portfolio.reactivex.PortfolioService portfolio,
-        JsonObject quote
+        Quote quote
     ) {
-        if (quote.getString("name").equals(company)) {
+        if (quote.getName().equals(company)) {
             if (TraderUtils.timeToSell()) {
                 System.out.println("Trying to sell: " + numberOfShares + " " + company);
-                return portfolio.rxSell(numberOfShares, quote)
+                return portfolio.rxSellShares(account, company, numberOfShares)
                     .doOnSuccess(p -> System.out.println("Sold " + numberOfShares + " of " + company + "!"))
                     .doOnError(e -> System.out.println("D'oh, failed to sell " + numberOfShares + " of " 
                         + company + ": " + e.getMessage()))
                         .toCompletable();
             } else {
                 System.out.println("Trying to buy: " + numberOfShares + " " + company);
-                return portfolio.rxBuy(numberOfShares, quote)
+                return portfolio.rxBuyShares(account, company, numberOfShares)
                     .doOnSuccess(p -> System.out.println("Bought " + numberOfShares + " of " + company + "!"))
                     .doOnError(e -> System.out.println("D'oh, failed to buy " + numberOfShares + " of " 
                         + company + " : " + e.getMessage()))
@@ -90,14 +153,44 @@ public class TraderUtils {
         return Completable.complete();
     }
 
+    public static void dumbTradingLogic(String company, int numberOfShares, OrderBatcher batcher, Quote quote) {
+        if (quote.getName().equals(company)) {
+            String action = TraderUtils.timeToSell() ? "SELL" : "BUY";
+            batcher.submit(action, company, numberOfShares, ar -> {
+                if (ar.succeeded()) {
+                    System.out.println(("BUY".equals(action) ? "Bought " : "Sold ") + numberOfShares + " of "
+                        + company + "!");
+                } else {
+                    System.out.println("D'oh, failed to " + action.toLowerCase() + " " + numberOfShares + " of "
+                        + company + " : " + ar.cause());
+                }
+            });
+        }
+    }
+
+    public static Completable rxDumbTradingLogic(String company, int numberOfShares, OrderBatcher batcher,
+                                                 Quote quote) {
+        if (quote.getName().equals(company)) {
+            String action = TraderUtils.timeToSell() ? "SELL" : "BUY";
+            System.out.println("Trying to " + action.toLowerCase() + ": " + numberOfShares + " " + company);
+            return batcher.rxSubmit(action, company, numberOfShares)
+                .doOnSuccess(status -> System.out.println(("BUY".equals(action) ? "Bought " : "Sold ")
+                    + numberOfShares + " of " + company + "!"))
+                .doOnError(e -> System.out.println("D'oh, failed to " + action.toLowerCase() + " " + numberOfShares
+                    + " of " + company + ": " + e.getMessage()))
+                .toCompletable();
+        }
+        return Completable.complete();
+    }
+
     public static void dumbTradingLogic(
+            String account,
             String company, 
             int numberOfShares,
             PortfolioService portfolio, 
             Map<String, Object> quote
             ) {
-        JsonObject json = new JsonObject(quote);
-        dumbTradingLogic(company, numberOfShares, portfolio, json);
+        dumbTradingLogic(account, company, numberOfShares, portfolio, Quote.fromJson(new JsonObject(quote)));
     }
 
 }
\ No newline at end of file
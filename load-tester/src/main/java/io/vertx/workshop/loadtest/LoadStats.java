@@ -0,0 +1,72 @@
+package io.vertx.workshop.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * The measurements of a load test run, shared by the traders and the collector. Latencies are recorded in
+ * microseconds in HdrHistogram recorders, so they can be recorded concurrently from several event loops.
+ */
+public class LoadStats {
+
+    final Recorder tickToTrade = new Recorder(3);
+    final Recorder orderLatency = new Recorder(3);
+    final Recorder tradeToAudit = new Recorder(3);
+
+    final LongAdder sent = new LongAdder();
+    final LongAdder succeeded = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder skipped = new LongAdder();
+    final LongAdder audited = new LongAdder();
+
+    private long start = System.nanoTime();
+
+    static void record(Recorder recorder, long nanos) {
+        recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    /**
+     * Discards the measurements, called at the end of the warmup.
+     */
+    void reset() {
+        tickToTrade.reset();
+        orderLatency.reset();
+        tradeToAudit.reset();
+        sent.reset();
+        succeeded.reset();
+        rejected.reset();
+        skipped.reset();
+        audited.reset();
+        start = System.nanoTime();
+    }
+
+    /**
+     * @return the report of the measurements since the last reset
+     */
+    String report() {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StringBuilder report = new StringBuilder()
+            .append(String.format("Duration           %.1f s%n", seconds))
+            .append(String.format("Orders             sent %d, succeeded %d, rejected %d, skipped %d%n",
+                sent.sum(), succeeded.sum(), rejected.sum(), skipped.sum()))
+            .append(String.format("Throughput         %.1f trades/s%n", succeeded.sum() / seconds))
+            .append(String.format("Audited            %d%n", audited.sum()))
+            .append(String.format("%-18s %10s %10s %10s %10s %10s %10s %10s%n",
+                "Latency (us)", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        append(report, "order", orderLatency.getIntervalHistogram());
+        append(report, "tick-to-trade", tickToTrade.getIntervalHistogram());
+        append(report, "trade-to-audit", tradeToAudit.getIntervalHistogram());
+        return report.toString();
+    }
+
+    private static void append(StringBuilder report, String name, Histogram histogram) {
+        report.append(String.format("%-18s %10d %10.0f %10d %10d %10d %10d %10d%n", name,
+            histogram.getTotalCount(), histogram.getMean(),
+            histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+            histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+            histogram.getMaxValue()));
+    }
+}
@@ -0,0 +1,167 @@
+package io.vertx.workshop.loadtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.AbstractVerticle;
+import io.vertx.reactivex.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.types.JDBCDataSource;
+import io.vertx.workshop.audit.impl.AuditVerticle;
+import io.vertx.workshop.portfolio.PortfolioService;
+import io.vertx.workshop.portfolio.impl.PortfolioVerticle;
+import io.vertx.workshop.quote.GeneratorConfigVerticle;
+
+/**
+ * Runs a load test of the whole trading pipeline in the current vert.x instance.
+ * <p>
+ * The real quote generator, portfolio and audit verticles are deployed, the audit database being an in-memory H2
+ * database in PostgreSQL mode. Then {@code traders} {@link SyntheticTraderVerticle} send {@code rate} orders per
+ * second in total, over {@code companies} generated companies. After {@code warmup} ms the measurements are reset,
+ * and after {@code duration} ms the traders are stopped. Once the audit had {@code drain} ms to store the last
+ * trades, the report is printed and vert.x is closed.
+ * </p>
+ * <p>
+ * The trade-to-audit latency is measured from the publication of the trade event by the portfolio service to the
+ * notification of the audit writer once the operation is stored. The {@code generator}, {@code portfolio} and
+ * {@code audit} entries are merged in the configuration of the corresponding verticles.
+ * </p>
+ */
+public class LoadTestVerticle extends AbstractVerticle {
+
+    static final String AUDITED_ADDRESS = "loadtest.audited";
+
+    private static final String H2_URL = "jdbc:h2:mem:audit;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+    private final LoadStats stats = new LoadStats();
+
+    /**
+     * The publication time of the trade events (account/sequence -&gt; nano time), until they are audited.
+     */
+    private final Map<String, Long> trades = new HashMap<>();
+
+    private final String run = UUID.randomUUID().toString().substring(0, 8);
+    private final List<String> traders = new ArrayList<>();
+
+    @Override
+    public void start(Future<Void> future) {
+        JsonObject config = config();
+        int companies = config.getInteger("companies", 100);
+        int traderCount = config.getInteger("traders", 100);
+        double rate = config.getDouble("rate", 1000.0);
+
+        JsonObject generator = new JsonObject()
+            .put("companies", new JsonArray())
+            .put("generated-companies", new JsonObject().put("count", companies))
+            .put("period", 100L)
+            .mergeIn(config.getJsonObject("generator", new JsonObject()));
+        JsonObject portfolio = new JsonObject()
+            .put("money", 1_000_000_000.0)
+            .put("journal", new JsonObject().put("enabled", false))
+            .mergeIn(config.getJsonObject("portfolio", new JsonObject()));
+        JsonObject audit = new JsonObject()
+            .put("database", new JsonObject()
+                .put("url", H2_URL)
+                .put("driver_class", "org.h2.Driver")
+                .put("user", "sa")
+                .put("password", ""))
+            .put("writer", new JsonObject().put("notify-address", AUDITED_ADDRESS))
+            .put("spool", new JsonObject().put("directory",
+                new File(System.getProperty("java.io.tmpdir"), "audit-spool-" + run).getPath()))
+            .mergeIn(config.getJsonObject("audit", new JsonObject()), true);
+
+        collectAuditLatencies();
+
+        ServiceDiscovery discovery = ServiceDiscovery.create(vertx);
+        discovery.rxPublish(JDBCDataSource.createRecord("audit-database",
+                new JsonObject().put("url", H2_URL), new JsonObject()))
+            .flatMap(record -> deploy(GeneratorConfigVerticle.class.getName(), generator))
+            .flatMap(id -> deploy(PortfolioVerticle.class.getName(), portfolio))
+            .flatMap(id -> deploy(AuditVerticle.class.getName(), audit))
+            .flatMap(id -> deployTraders(traderCount, rate, companies, config))
+            .subscribe(ids -> {
+                traders.addAll(ids);
+                System.out.println("Load test " + run + " started: " + traderCount + " traders, " + rate
+                    + " orders/s");
+                vertx.setTimer(config.getLong("warmup", 10000L), l -> {
+                    stats.reset();
+                    trades.clear();
+                    vertx.setTimer(config.getLong("duration", 60000L), l2 -> stop(config.getLong("drain", 2000L)));
+                });
+                future.complete();
+            }, future::fail);
+    }
+
+    private Single<String> deploy(String verticle, JsonObject config) {
+        return vertx.rxDeployVerticle(verticle, new DeploymentOptions().setConfig(config));
+    }
+
+    private Single<List<String>> deployTraders(int count, double rate, int companies, JsonObject config) {
+        // Vert.x timers have a ms resolution, fast traders send several orders per tick
+        double perTrader = rate / count;
+        long period = Math.max(1, Math.round(1000 / perTrader));
+        int ordersPerTick = (int) Math.max(1, Math.round(perTrader * period / 1000));
+        JsonArray names = config.getJsonArray("trade-companies");
+        if (names == null) {
+            names = new JsonArray();
+            String prefix = config.getJsonObject("generator", new JsonObject())
+                .getJsonObject("generated-companies", new JsonObject()).getString("name-prefix", "Company-");
+            for (int i = 0; i < companies; i++) {
+                names.add(prefix + i);
+            }
+        }
+        JsonArray traded = names;
+        return Observable.range(0, count)
+            .flatMapSingle(i -> vertx.rxDeployVerticle(new SyntheticTraderVerticle(stats),
+                new DeploymentOptions().setConfig(new JsonObject()
+                    .put("account", "load-" + run + "-" + i)
+                    .put("companies", traded)
+                    .put("period", period)
+                    .put("orders-per-tick", ordersPerTick)
+                    .put("max-in-flight", config.getInteger("max-in-flight", 16)))))
+            .toList();
+    }
+
+    private void collectAuditLatencies() {
+        vertx.eventBus().<JsonObject>consumer(PortfolioService.EVENT_ADDRESS, message -> {
+            JsonObject trade = message.body();
+            String account = trade.getString("account");
+            if (account != null && account.startsWith("load-" + run)) {
+                trades.put(account + "/" + trade.getLong("sequence"), System.nanoTime());
+            }
+        });
+        vertx.eventBus().<JsonArray>consumer(AUDITED_ADDRESS, message -> {
+            long now = System.nanoTime();
+            for (Object operation : message.body()) {
+                JsonObject trade = (JsonObject) operation;
+                Long published = trades.remove(trade.getString("account") + "/" + trade.getLong("sequence"));
+                if (published != null) {
+                    stats.audited.increment();
+                    LoadStats.record(stats.tradeToAudit, now - published);
+                }
+            }
+        });
+    }
+
+    private void stop(long drain) {
+        Observable.fromIterable(traders)
+            .flatMapCompletable(vertx::rxUndeploy)
+            .subscribe(() -> vertx.setTimer(drain, l -> {
+                System.out.println("Load test " + run + " report");
+                System.out.print(stats.report());
+                if (!trades.isEmpty()) {
+                    System.out.println("Not audited         " + trades.size());
+                }
+                vertx.close();
+            }), Throwable::printStackTrace);
+    }
+}
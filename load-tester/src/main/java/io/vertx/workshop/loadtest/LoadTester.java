@@ -0,0 +1,28 @@
+package io.vertx.workshop.loadtest;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Launches a {@link LoadTestVerticle} in a new vert.x instance. The optional argument is the path of a Json
+ * configuration file.
+ */
+public class LoadTester {
+
+    public static void main(String[] args) throws Exception {
+        JsonObject config = args.length > 0
+            ? new JsonObject(new String(Files.readAllBytes(Paths.get(args[0])), "UTF-8"))
+            : new JsonObject();
+        Vertx vertx = Vertx.vertx();
+        vertx.deployVerticle(LoadTestVerticle.class.getName(), new DeploymentOptions().setConfig(config), ar -> {
+            if (ar.failed()) {
+                ar.cause().printStackTrace();
+                vertx.close();
+            }
+        });
+    }
+}
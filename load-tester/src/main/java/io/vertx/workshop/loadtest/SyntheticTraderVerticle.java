@@ -0,0 +1,116 @@
+package io.vertx.workshop.loadtest;
+
+import java.util.Collections;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.serviceproxy.ServiceProxyBuilder;
+import io.vertx.workshop.common.MarketSubscription;
+import io.vertx.workshop.common.Quote;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.PortfolioService;
+import io.vertx.workshop.trader.impl.TraderUtils;
+
+/**
+ * A trader sending orders at a fixed rate on its own account.
+ * <p>
+ * The trader follows the quotes of one of the {@code companies}, through a {@link MarketSubscription}. Every
+ * {@code period} ms, it is allowed {@code orders-per-tick} orders (buy or sell a few shares), sent on the next quote
+ * of the company and priced by the portfolio service. The orders not sent by the end of the period, for lack of a
+ * quote, and the orders exceeding {@code max-in-flight} outstanding orders are skipped and counted. For each
+ * acknowledged trade, the order latency (from sending) and the tick-to-trade latency (from the reception of the quote
+ * that triggered the order) are recorded.
+ * </p>
+ */
+public class SyntheticTraderVerticle extends AbstractVerticle {
+
+    private final LoadStats stats;
+
+    private PortfolioService portfolio;
+    private String account;
+    private String company;
+    private int maxInFlight;
+
+    private MarketSubscription subscription;
+    private int allowed;
+    private int inFlight;
+
+    public SyntheticTraderVerticle(LoadStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public void start(Future<Void> future) {
+        JsonObject config = config();
+        account = config.getString("account");
+        company = TraderUtils.pickACompany(config);
+        maxInFlight = config.getInteger("max-in-flight", 16);
+        int ordersPerTick = config.getInteger("orders-per-tick", 1);
+
+        portfolio = new ServiceProxyBuilder(vertx).setAddress(PortfolioService.ADDRESS).build(PortfolioService.class);
+
+        ServiceDiscovery discovery = ServiceDiscovery.create(vertx);
+        discovery.getRecord(record -> record.getName().equals("market-data"), ar -> {
+            discovery.close();
+            if (ar.failed() || ar.result() == null) {
+                future.fail(ar.failed() ? ar.cause() : new IllegalStateException("No market data"));
+                return;
+            }
+            // Only receive the quotes of the company
+            subscription = MarketSubscription.subscribe(vertx.eventBus(), ar.result().getMetadata(),
+                Collections.singletonList(company), this::onQuote);
+            vertx.setPeriodic(config.getLong("period", 10L), l -> {
+                // The orders of the previous period not sent for lack of a quote
+                stats.skipped.add(allowed);
+                allowed = ordersPerTick;
+            });
+            future.complete();
+        });
+    }
+
+    @Override
+    public void stop() {
+        if (subscription != null) {
+            subscription.unregister();
+        }
+    }
+
+    private void onQuote(Quote quote) {
+        long received = System.nanoTime();
+        for (; allowed > 0; allowed--) {
+            order(received);
+        }
+    }
+
+    private void order(long tick) {
+        if (inFlight >= maxInFlight) {
+            stats.skipped.increment();
+            return;
+        }
+        inFlight++;
+        stats.sent.increment();
+        long sent = System.nanoTime();
+        Handler<AsyncResult<Portfolio>> handler = ar -> {
+            inFlight--;
+            long now = System.nanoTime();
+            if (ar.succeeded()) {
+                stats.succeeded.increment();
+                LoadStats.record(stats.orderLatency, now - sent);
+                LoadStats.record(stats.tickToTrade, now - tick);
+            } else {
+                stats.rejected.increment();
+            }
+        };
+        // The service prices the order with its own last quote, the one received by the trader or a newer one
+        int amount = TraderUtils.pickANumber();
+        if (TraderUtils.timeToSell()) {
+            portfolio.sellShares(account, company, amount, handler);
+        } else {
+            portfolio.buyShares(account, company, amount, handler);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package io.vertx.workshop.dashboard;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import in.yunyul.vertx.console.base.WebConsoleRegistry;
@@ -16,19 +19,46 @@ import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.codec.BodyCodec;
+import io.vertx.ext.web.handler.sockjs.BridgeEvent;
 import io.vertx.ext.web.handler.sockjs.BridgeOptions;
 import io.vertx.ext.web.handler.sockjs.PermittedOptions;
 import io.vertx.ext.web.handler.sockjs.SockJSHandler;
+import io.vertx.ext.web.handler.sockjs.SockJSSocket;
 import io.vertx.servicediscovery.ServiceDiscovery;
 import io.vertx.servicediscovery.types.HttpEndpoint;
-
+import io.vertx.workshop.common.Conflator;
+import io.vertx.workshop.common.DiscoveryCache;
+import io.vertx.workshop.common.Metrics;
+import io.vertx.workshop.common.QuoteJsonCodec;
+
+/**
+ * The dashboard, serving the console and bridging the event bus to the browsers.
+ * <p>
+ * The quotes published on {@code market} are conflated per browser: only the latest quote of each company is kept,
+ * and the quotes are sent at most {@code market-max-rate} times per second (2 by default). A browser may choose its
+ * own rate with the {@code max-rate} header of its registration. While the write queue of the socket is full, the
+ * quotes keep being conflated, so slow browsers never receive stale quotes.
+ * </p>
+ * <p>
+ * The web client of the audit service is retrieved once, from a {@link DiscoveryCache}, rather than from the
+ * discovery backend for every request.
+ * </p>
+ */
 public class DashboardVerticle extends AbstractVerticle {
 
+    private static final String MARKET = "market";
+
     private ServiceDiscovery discovery;
+    private DiscoveryCache services;
+
+    private final Map<SockJSSocket, Conflator<JsonObject>> markets = new HashMap<>();
 
     @Override
     public void start() throws Exception {
-        
+
+        // The dashboard is the SockJS edge: the binary quotes are decoded straight to Json for the bridge
+        QuoteJsonCodec.register(vertx);
+
         Router router = Router.router(vertx);
 
         SockJSHandler sockJSHandler = SockJSHandler.create(vertx);
@@ -38,11 +68,12 @@ public class DashboardVerticle extends AbstractVerticle {
         options
             .addOutboundPermitted(new PermittedOptions().setAddress("market"))
             .addOutboundPermitted(new PermittedOptions().setAddress("portfolio"))
+            .addOutboundPermitted(new PermittedOptions().setAddress("portfolio.valuation"))
             .addOutboundPermitted(new PermittedOptions().setAddress("service.portfolio"))
             .addInboundPermitted(new PermittedOptions().setAddress("service.portfolio"))
             .addOutboundPermitted(new PermittedOptions().setAddress("vertx.circuit-breaker"));
 
-        sockJSHandler.bridge(options);
+        sockJSHandler.bridge(options, this::conflateTheMarket);
         
         router.route("/eventbus/*")
                 .handler(sockJSHandler);
@@ -55,6 +86,12 @@ public class DashboardVerticle extends AbstractVerticle {
         router.get("/health")
                 .handler(rc -> rc.response().end("Ok"));
 
+        // Metrics in the Prometheus format
+        router.get("/metrics")
+                .handler(rc -> rc.response()
+                    .putHeader("content-type", Metrics.PROMETHEUS_CONTENT_TYPE)
+                    .end(Metrics.scrape(Metrics.registry())));
+
         // MetricsService metricsService = MetricsService.create(vertx);
         // HealthChecks healthChecks = HealthChecks.create(vertx);
         
@@ -64,6 +101,7 @@ public class DashboardVerticle extends AbstractVerticle {
 
         ServiceDiscovery.create(vertx, discovery -> {
             this.discovery = discovery;
+            this.services = new DiscoveryCache(vertx, discovery, Metrics.registry());
             WebConsoleRegistry.create("/admin")
                 // Add pages
                 .addPage(MetricsConsolePage.create(dropwizardRegistry))
@@ -85,10 +123,79 @@ public class DashboardVerticle extends AbstractVerticle {
 
     }
 
+    @Override
+    public void stop() {
+        if (services != null) {
+            services.close();
+        }
+    }
+
+    private void conflateTheMarket(BridgeEvent event) {
+        JsonObject message = event.getRawMessage();
+        boolean market = message != null && MARKET.equals(message.getString("address"));
+        SockJSSocket socket = event.socket();
+        switch (event.type()) {
+            case REGISTER:
+                if (market) {
+                    Conflator<JsonObject> previous = markets.put(socket, createConflator(socket, message));
+                    if (previous != null) {
+                        previous.close();
+                    }
+                }
+                break;
+            case RECEIVE:
+                Conflator<JsonObject> conflator = market ? markets.get(socket) : null;
+                if (conflator != null) {
+                    // The conflator writes the latest quotes to the socket itself
+                    conflator.offer(message);
+                    event.complete(false);
+                    return;
+                }
+                break;
+            case UNREGISTER:
+                if (market) {
+                    closeConflator(socket);
+                }
+                break;
+            case SOCKET_CLOSED:
+                closeConflator(socket);
+                break;
+            default:
+                break;
+        }
+        event.complete(true);
+    }
+
+    private Conflator<JsonObject> createConflator(SockJSSocket socket, JsonObject registration) {
+        double maxRate = config().getDouble("market-max-rate", 2.0);
+        JsonObject headers = registration.getJsonObject("headers");
+        if (headers != null && headers.getValue("max-rate") != null) {
+            try {
+                maxRate = Double.parseDouble(headers.getValue("max-rate").toString());
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid market rate: " + headers.getValue("max-rate"));
+            }
+        }
+        if (maxRate <= 0) {
+            maxRate = config().getDouble("market-max-rate", 2.0);
+        }
+        return new Conflator<>(vertx,
+            envelope -> envelope.getJsonObject("body").getString("name"),
+            maxRate,
+            () -> !socket.writeQueueFull(),
+            envelope -> socket.write(envelope.toBuffer()));
+    }
+
+    private void closeConflator(SockJSSocket socket) {
+        Conflator<JsonObject> conflator = markets.remove(socket);
+        if (conflator != null) {
+            conflator.close();
+        }
+    }
+
     private Future<WebClient> retrieveAuditService() {
         Future<WebClient> future = Future.future();
-        HttpEndpoint.getWebClient(discovery, 
-            rec -> rec.getName().equalsIgnoreCase("audit"), future);
+        services.get("audit", HttpEndpoint.TYPE, WebClient.class, future);
         return future;
     }
 
@@ -16,11 +16,8 @@
 
 
 /**
- A service managing a portfolio.
+ A service managing the portfolios of trading accounts.
  <p>
- This service is an event bus service (a.k.a. a service proxy or async RPC). The client 
- and server are generated at compile time.
- </p>
  @class
 */
 export default class PortfolioService {
@@ -34,4 +31,28 @@ export default class PortfolioService {
   sell(amount: number, quote: Object, resultHandler: (err: any, result: any) => any) : void;
 
   evaluate(resultHandler: (err: any, result: any) => any) : void;
+
+  getAccountPortfolio(account: string, resultHandler: (err: any, result: any) => any) : void;
+
+  buyForAccount(account: string, amount: number, quote: Object, resultHandler: (err: any, result: any) => any) : void;
+
+  sellForAccount(account: string, amount: number, quote: Object, resultHandler: (err: any, result: any) => any) : void;
+
+  buyShares(account: string, name: string, amount: number, resultHandler: (err: any, result: any) => any) : void;
+
+  sellShares(account: string, name: string, amount: number, resultHandler: (err: any, result: any) => any) : void;
+
+  buyDelta(account: string, name: string, amount: number, resultHandler: (err: any, result: any) => any) : void;
+
+  sellDelta(account: string, name: string, amount: number, resultHandler: (err: any, result: any) => any) : void;
+
+  syncPortfolio(account: string, resultHandler: (err: any, result: any) => any) : void;
+
+  evaluateAccount(account: string, resultHandler: (err: any, result: any) => any) : void;
+
+  placeOrder(account: string, order: Object, resultHandler: (err: any, result: Object) => any) : void;
+
+  cancelOrder(account: string, name: string, orderId: number, resultHandler: (err: any, result: Object) => any) : void;
+
+  submitOrders(account: string, orders: Array<Object>, resultHandler: (err: any, result: Array<Object>) => any) : void;
 }
\ No newline at end of file
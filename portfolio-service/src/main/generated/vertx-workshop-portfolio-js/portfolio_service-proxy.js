@@ -30,11 +30,8 @@
 }(function () {
 
   /**
-   A service managing a portfolio.
+   A service managing the portfolios of trading accounts.
    <p>
-   This service is an event bus service (a.k.a. a service proxy or async RPC). The client 
-   and server are generated at compile time.
-   </p>
    @class
   */
   var PortfolioService = function(eb, address) {
@@ -122,6 +119,262 @@
       } else throw new TypeError('function invoked with invalid arguments');
     };
 
+    /**
+     Gets the portfolio of the given account. The account is created if it does not exist yet.
+
+     @public
+     @param account {string} the account 
+     @param resultHandler {function} the result handler called when the portfolio has been retrieved. The async result indicates whether the call was successful or not. 
+     */
+    this.getAccountPortfolio =  function(account, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 2 && typeof __args[0] === 'string' && typeof __args[1] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0]}, {"action":"getAccountPortfolio"}, function(err, result) { __args[1](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Buy `amount` shares of the given shares (quote) for the given account.
+
+     @public
+     @param account {string} the account 
+     @param amount {number} the amount 
+     @param quote {Object} the last quote 
+     @param resultHandler {function} the result handler with the updated portfolio. If the action cannot be executed the async result is marked as a failure (not enough money, not enough shares available...) 
+     */
+    this.buyForAccount =  function(account, amount, quote, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 4 && typeof __args[0] === 'string' && typeof __args[1] ==='number' && (typeof __args[2] === 'object' && __args[2] != null) && typeof __args[3] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0], "amount":__args[1], "quote":__args[2]}, {"action":"buyForAccount"}, function(err, result) { __args[3](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Sell `amount` shares of the given shares (quote) for the given account.
+
+     @public
+     @param account {string} the account 
+     @param amount {number} the amount 
+     @param quote {Object} the last quote 
+     @param resultHandler {function} the result handler with the updated portfolio. If the action cannot be executed, the async result is marked as a failure. (not enough share...) 
+     */
+    this.sellForAccount =  function(account, amount, quote, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 4 && typeof __args[0] === 'string' && typeof __args[1] ==='number' && (typeof __args[2] === 'object' && __args[2] != null) && typeof __args[3] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0], "amount":__args[1], "quote":__args[2]}, {"action":"sellForAccount"}, function(err, result) { __args[3](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Buy `amount` shares of the given company for the given account, at the last quote received by the service.
+
+     @public
+     @param account {string} the account 
+     @param name {string} the name of the company 
+     @param amount {number} the amount 
+     @param resultHandler {function} the result handler with the updated portfolio. If the action cannot be executed the async result is marked as a failure (no fresh quote, not enough money, not enough shares available...) 
+     */
+    this.buyShares =  function(account, name, amount, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 4 && typeof __args[0] === 'string' && typeof __args[1] === 'string' && typeof __args[2] ==='number' && typeof __args[3] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0], "name":__args[1], "amount":__args[2]}, {"action":"buyShares"}, function(err, result) { __args[3](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Sell `amount` shares of the given company for the given account, at the last quote received by the service.
+
+     @public
+     @param account {string} the account 
+     @param name {string} the name of the company 
+     @param amount {number} the amount 
+     @param resultHandler {function} the result handler with the updated portfolio. If the action cannot be executed, the async result is marked as a failure. (no fresh quote, not enough share...) 
+     */
+    this.sellShares =  function(account, name, amount, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 4 && typeof __args[0] === 'string' && typeof __args[1] === 'string' && typeof __args[2] ==='number' && typeof __args[3] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0], "name":__args[1], "amount":__args[2]}, {"action":"sellShares"}, function(err, result) { __args[3](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Buy `amount` shares of the given company for the given account, at the last quote received by the service, and
+     reply with the change of the portfolio rather than the whole portfolio.
+
+     @public
+     @param account {string} the account 
+     @param name {string} the name of the company 
+     @param amount {number} the amount 
+     @param resultHandler {function} the result handler with the change of the portfolio. If the action cannot be executed the async result is marked as a failure (no fresh quote, not enough money, not enough shares available...) 
+     */
+    this.buyDelta =  function(account, name, amount, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 4 && typeof __args[0] === 'string' && typeof __args[1] === 'string' && typeof __args[2] ==='number' && typeof __args[3] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0], "name":__args[1], "amount":__args[2]}, {"action":"buyDelta"}, function(err, result) { __args[3](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Sell `amount` shares of the given company for the given account, at the last quote received by the service, and
+     reply with the change of the portfolio rather than the whole portfolio.
+
+     @public
+     @param account {string} the account 
+     @param name {string} the name of the company 
+     @param amount {number} the amount 
+     @param resultHandler {function} the result handler with the change of the portfolio. If the action cannot be executed, the async result is marked as a failure. (no fresh quote, not enough share...) 
+     */
+    this.sellDelta =  function(account, name, amount, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 4 && typeof __args[0] === 'string' && typeof __args[1] === 'string' && typeof __args[2] ==='number' && typeof __args[3] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0], "name":__args[1], "amount":__args[2]}, {"action":"sellDelta"}, function(err, result) { __args[3](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Gets the whole portfolio of the given account with its version, to synchronize a replica maintained from the
+     changes returned by {@link PortfolioService#buyDelta} and
+     {@link PortfolioService#sellDelta}.
+
+     @public
+     @param account {string} the account 
+     @param resultHandler {function} the result handler with the portfolio, in the <code>portfolio</code> of the delta 
+     */
+    this.syncPortfolio =  function(account, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 2 && typeof __args[0] === 'string' && typeof __args[1] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0]}, {"action":"syncPortfolio"}, function(err, result) { __args[1](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Evaluates the current value of the portfolio of the given account.
+
+     @public
+     @param account {string} the account 
+     @param resultHandler {function} the result handler with the valuation 
+     */
+    this.evaluateAccount =  function(account, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 2 && typeof __args[0] === 'string' && typeof __args[1] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0]}, {"action":"evaluateAccount"}, function(err, result) { __args[1](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Places an order for the given account in the order book of the company. The order is a Json object with:
+     <ul>
+     <li><code>name</code>: the company</li>
+     <li><code>action</code>: <code>BUY</code> or <code>SELL</code></li>
+     <li><code>type</code>: <code>LIMIT</code> (the default) or <code>MARKET</code></li>
+     <li><code>amount</code>: the number of shares</li>
+     <li><code>price</code>: the limit price, for a limit order</li>
+     </ul>
+     The order is matched against the resting orders and the market, and the remainder of a limit order rests in
+     the book until filled or cancelled. The cash (buy) or the shares (sell) it needs are reserved meanwhile.
+
+     @public
+     @param account {string} the account 
+     @param order {Object} the order 
+     @param resultHandler {function} the result handler with the order status: <code>id</code> (0 if nothing rests in the book), <code>name</code>, <code>action</code>, <code>filled</code>, <code>remaining</code> (resting in the book) and <code>status</code> (<code>FILLED</code>, <code>PARTIALLY_FILLED</code>, <code>NEW</code> or <code>CANCELLED</code>). The async result is marked as a failure if the order is invalid or cannot be funded. 
+     */
+    this.placeOrder =  function(account, order, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 3 && typeof __args[0] === 'string' && (typeof __args[1] === 'object' && __args[1] != null) && typeof __args[2] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0], "order":__args[1]}, {"action":"placeOrder"}, function(err, result) { __args[2](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Cancels a resting order of the given account.
+
+     @public
+     @param account {string} the account 
+     @param name {string} the company of the order 
+     @param orderId {number} the order id, given by {@link PortfolioService#placeOrder} 
+     @param resultHandler {function} the result handler with the order status: <code>id</code>, <code>name</code> and <code>cancelled</code> (the cancelled number of shares). The async result is marked as a failure if the order is not in the book anymore. 
+     */
+    this.cancelOrder =  function(account, name, orderId, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 4 && typeof __args[0] === 'string' && typeof __args[1] === 'string' && typeof __args[2] ==='number' && typeof __args[3] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0], "name":__args[1], "orderId":__args[2]}, {"action":"cancelOrder"}, function(err, result) { __args[3](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Submits a batch of orders for the given account, in a single call. The orders are executed in order, one
+     after the other, and no other operation of the account is interleaved with them. Each order is a Json object
+     with either:
+     <ul>
+     <li><code>action</code> (<code>BUY</code> or <code>SELL</code>), <code>amount</code> and <code>name</code>: a buy or a sell at the
+     last quote, as {@link PortfolioService#buyShares} and
+     {@link PortfolioService#sellShares} do. A <code>quote</code> may be given instead of the name, as for
+     {@link PortfolioService#buyForAccount}</li>
+     <li>or, with a <code>type</code>, the fields of an order placed in the book, see
+     {@link PortfolioService#placeOrder}</li>
+     </ul>
+     An order failing does not fail the batch, the next orders are still executed.
+
+     @public
+     @param account {string} the account 
+     @param orders {Array.<Object>} the orders, at most MAX_BATCH_SIZE 
+     @param resultHandler {function} the result handler with the status of each order, in the order of the batch: the order status as given by {@link PortfolioService#placeOrder}, or, if the order failed, the <code>REJECTED</code> status and the reason in <code>message</code>. The async result is marked as a failure if the batch is too large. 
+     */
+    this.submitOrders =  function(account, orders, resultHandler) {
+      var __args = arguments;
+      if (__args.length === 3 && typeof __args[0] === 'string' && typeof __args[1] === 'object' && __args[1] instanceof Array && typeof __args[2] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {"account":__args[0], "orders":__args[1]}, {"action":"submitOrders"}, function(err, result) { __args[2](err, result && result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
   };
 
   if (typeof exports !== 'undefined') {
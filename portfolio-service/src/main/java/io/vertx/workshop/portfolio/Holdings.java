@@ -0,0 +1,333 @@
+package io.vertx.workshop.portfolio;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.common.Instrument;
+
+/**
+ * The shares owned by a {@link Portfolio} (company name -&gt; number of shares).
+ * <p>
+ * The companies are identified by the id of their interned {@link Instrument}, and the holdings are kept in an open
+ * addressing hash table of primitive ints (linear probing, backward shift deletion), so a lookup or an update is a
+ * couple of array accesses, without string comparison nor boxing. The {@link #amount(String)} and
+ * {@link #set(String, int)} methods are the primitive fast paths.
+ * </p>
+ * <p>
+ * The holdings are also a {@link Map}, iterated in the order of the company names as the {@code TreeMap} used before,
+ * so the Json representation is unchanged. The order is only computed when iterating, on a snapshot of the companies.
+ * </p>
+ * This class is not thread safe.
+ */
+public final class Holdings extends AbstractMap<String, Integer> {
+
+    private static final int FREE = -1;
+    private static final Comparator<Instrument> BY_NAME = Comparator.comparing(Instrument::name);
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * Creates empty holdings.
+     */
+    public Holdings() {
+        allocate(8);
+    }
+
+    /**
+     * Creates a copy of the given holdings.
+     *
+     * @param other the holdings to copy
+     */
+    public Holdings(Holdings other) {
+        this.keys = other.keys.clone();
+        this.values = other.values.clone();
+        this.mask = other.mask;
+        this.size = other.size;
+    }
+
+    /**
+     * Creates holdings containing the given shares.
+     *
+     * @param shares the shares (name -&gt; number)
+     */
+    public Holdings(Map<String, Integer> shares) {
+        allocate(capacity(shares.size()));
+        for (Map.Entry<String, Integer> entry : shares.entrySet()) {
+            set(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static int capacity(int size) {
+        // Keep the load factor at most 1/2
+        int capacity = 8;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int slot(int id, int mask) {
+        // The ids are dense, spread them over the table
+        int hash = id * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private int indexOf(int id) {
+        int index = slot(id, mask);
+        int key;
+        while ((key = keys[index]) != FREE) {
+            if (key == id) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param id the id of the instrument of a company
+     * @return the number of shares of the company, {@code 0} if none
+     */
+    public int amount(int id) {
+        int index = indexOf(id);
+        return index < 0 ? 0 : values[index];
+    }
+
+    /**
+     * @param name the name of the company
+     * @return the number of shares of the company, {@code 0} if none
+     */
+    public int amount(String name) {
+        Instrument instrument = name == null ? null : Instrument.get(name);
+        return instrument == null ? 0 : amount(instrument.id());
+    }
+
+    /**
+     * Sets the number of shares of a company.
+     *
+     * @param id     the id of the instrument of the company
+     * @param amount the number of shares
+     * @return the former number of shares, {@code 0} if none
+     */
+    public int set(int id, int amount) {
+        int index = slot(id, mask);
+        int key;
+        while ((key = keys[index]) != FREE) {
+            if (key == id) {
+                int former = values[index];
+                values[index] = amount;
+                return former;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = id;
+        values[index] = amount;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return 0;
+    }
+
+    /**
+     * Sets the number of shares of a company, the company is interned if needed.
+     *
+     * @param name   the name of the company
+     * @param amount the number of shares
+     * @return the former number of shares, {@code 0} if none
+     */
+    public int set(String name, int amount) {
+        if (name == null) {
+            throw new NullPointerException("The name of the company is required");
+        }
+        return set(Instrument.intern(name, null).id(), amount);
+    }
+
+    /**
+     * Removes a company.
+     *
+     * @param id the id of the instrument of the company
+     * @return whether the company was held
+     */
+    public boolean delete(int id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return false;
+        }
+        // Shift back the following entries of the cluster, so lookups never need tombstones
+        int hole = index;
+        int next = (hole + 1) & mask;
+        int key;
+        while ((key = keys[next]) != FREE) {
+            int home = slot(key, mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = key;
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = FREE;
+        values[hole] = 0;
+        size--;
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int index = slot(oldKeys[i], mask);
+                while (keys[index] != FREE) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * @return the instruments of the held companies, ordered by name
+     */
+    private Instrument[] sortedInstruments() {
+        Instrument[] instruments = new Instrument[size];
+        int count = 0;
+        for (int key : keys) {
+            if (key != FREE) {
+                instruments[count++] = Instrument.get(key);
+            }
+        }
+        Arrays.sort(instruments, BY_NAME);
+        return instruments;
+    }
+
+    /**
+     * Writes the holdings in a Json object, ordered by company name.
+     *
+     * @return the Json object (name -&gt; number)
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        for (Instrument instrument : sortedInstruments()) {
+            json.put(instrument.name(), amount(instrument.id()));
+        }
+        return json;
+    }
+
+    // --- Map view
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Instrument instrument = key instanceof String ? Instrument.get((String) key) : null;
+        return instrument != null && indexOf(instrument.id()) >= 0;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        Instrument instrument = key instanceof String ? Instrument.get((String) key) : null;
+        int index = instrument == null ? -1 : indexOf(instrument.id());
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public Integer put(String key, Integer value) {
+        if (value == null) {
+            throw new NullPointerException("The number of shares is required");
+        }
+        boolean held = containsKey(key);
+        int former = set(key, value);
+        return held ? former : null;
+    }
+
+    @Override
+    public Integer remove(Object key) {
+        Instrument instrument = key instanceof String ? Instrument.get((String) key) : null;
+        int index = instrument == null ? -1 : indexOf(instrument.id());
+        if (index < 0) {
+            return null;
+        }
+        int former = values[index];
+        delete(instrument.id());
+        return former;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Integer>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Integer>>() {
+            @Override
+            public Iterator<Map.Entry<String, Integer>> iterator() {
+                Instrument[] instruments = sortedInstruments();
+                return new Iterator<Map.Entry<String, Integer>>() {
+                    private int next;
+                    private Instrument current;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < instruments.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Integer> next() {
+                        if (next >= instruments.length) {
+                            throw new NoSuchElementException();
+                        }
+                        current = instruments[next++];
+                        Instrument instrument = current;
+                        return new SimpleEntry<String, Integer>(instrument.name(), amount(instrument.id())) {
+                            @Override
+                            public Integer setValue(Integer value) {
+                                super.setValue(value);
+                                return set(instrument.id(), value);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (current == null) {
+                            throw new IllegalStateException();
+                        }
+                        delete(current.id());
+                        current = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+package io.vertx.workshop.portfolio;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.common.Metrics;
+
+/**
+ * A {@link PortfolioService} recording the calls made to another one: for each operation ({@code getPortfolio},
+ * {@code buy}, {@code sell}, {@code evaluate}, {@code placeOrder}, {@code cancelOrder} and {@code submitOrders},
+ * whatever the account), the latency in an HdrHistogram backed timer, the number of succeeded and failed calls and
+ * the number of calls in flight. A batch of orders counts as one call.
+ * <p>
+ * It can wrap the implementation (server side) or a proxy (client side), the metrics are named
+ * {@code <prefix>.<operation>.latency|succeeded|failed|in-flight}.
+ * </p>
+ */
+public class InstrumentedPortfolioService implements PortfolioService {
+
+    private final PortfolioService delegate;
+    private final Operation getPortfolio;
+    private final Operation buy;
+    private final Operation sell;
+    private final Operation evaluate;
+    private final Operation placeOrder;
+    private final Operation cancelOrder;
+    private final Operation submitOrders;
+
+    private static final class Operation {
+        private final Timer latency;
+        private final Counter succeeded;
+        private final Counter failed;
+        private final Counter inFlight;
+
+        private Operation(MetricRegistry registry, String prefix, String name) {
+            latency = Metrics.timer(registry, MetricRegistry.name(prefix, name, "latency"));
+            succeeded = registry.counter(MetricRegistry.name(prefix, name, "succeeded"));
+            failed = registry.counter(MetricRegistry.name(prefix, name, "failed"));
+            inFlight = registry.counter(MetricRegistry.name(prefix, name, "in-flight"));
+        }
+
+        private <T> Handler<AsyncResult<T>> record(Handler<AsyncResult<T>> handler) {
+            inFlight.inc();
+            long begin = System.nanoTime();
+            return ar -> {
+                latency.update(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+                inFlight.dec();
+                if (ar.succeeded()) {
+                    succeeded.inc();
+                } else {
+                    failed.inc();
+                }
+                handler.handle(ar);
+            };
+        }
+    }
+
+    /**
+     * Creates a new {@link InstrumentedPortfolioService}.
+     *
+     * @param delegate the recorded service
+     * @param registry the registry on which the metrics are published
+     * @param prefix   the prefix of the metric names
+     */
+    public InstrumentedPortfolioService(PortfolioService delegate, MetricRegistry registry, String prefix) {
+        this.delegate = delegate;
+        this.getPortfolio = new Operation(registry, prefix, "getPortfolio");
+        this.buy = new Operation(registry, prefix, "buy");
+        this.sell = new Operation(registry, prefix, "sell");
+        this.evaluate = new Operation(registry, prefix, "evaluate");
+        this.placeOrder = new Operation(registry, prefix, "placeOrder");
+        this.cancelOrder = new Operation(registry, prefix, "cancelOrder");
+        this.submitOrders = new Operation(registry, prefix, "submitOrders");
+    }
+
+    @Override
+    public void getPortfolio(Handler<AsyncResult<Portfolio>> resultHandler) {
+        delegate.getPortfolio(getPortfolio.record(resultHandler));
+    }
+
+    @Override
+    public void buy(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+        delegate.buy(amount, quote, buy.record(resultHandler));
+    }
+
+    @Override
+    public void sell(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+        delegate.sell(amount, quote, sell.record(resultHandler));
+    }
+
+    @Override
+    public void evaluate(Handler<AsyncResult<Double>> resultHandler) {
+        delegate.evaluate(evaluate.record(resultHandler));
+    }
+
+    @Override
+    public void getAccountPortfolio(String account, Handler<AsyncResult<Portfolio>> resultHandler) {
+        delegate.getAccountPortfolio(account, getPortfolio.record(resultHandler));
+    }
+
+    @Override
+    public void buyForAccount(String account, int amount, JsonObject quote,
+                              Handler<AsyncResult<Portfolio>> resultHandler) {
+        delegate.buyForAccount(account, amount, quote, buy.record(resultHandler));
+    }
+
+    @Override
+    public void sellForAccount(String account, int amount, JsonObject quote,
+                               Handler<AsyncResult<Portfolio>> resultHandler) {
+        delegate.sellForAccount(account, amount, quote, sell.record(resultHandler));
+    }
+
+    @Override
+    public void buyShares(String account, String name, int amount, Handler<AsyncResult<Portfolio>> resultHandler) {
+        delegate.buyShares(account, name, amount, buy.record(resultHandler));
+    }
+
+    @Override
+    public void sellShares(String account, String name, int amount, Handler<AsyncResult<Portfolio>> resultHandler) {
+        delegate.sellShares(account, name, amount, sell.record(resultHandler));
+    }
+
+    @Override
+    public void buyDelta(String account, String name, int amount, Handler<AsyncResult<PortfolioDelta>> resultHandler) {
+        delegate.buyDelta(account, name, amount, buy.record(resultHandler));
+    }
+
+    @Override
+    public void sellDelta(String account, String name, int amount,
+                          Handler<AsyncResult<PortfolioDelta>> resultHandler) {
+        delegate.sellDelta(account, name, amount, sell.record(resultHandler));
+    }
+
+    @Override
+    public void syncPortfolio(String account, Handler<AsyncResult<PortfolioDelta>> resultHandler) {
+        delegate.syncPortfolio(account, getPortfolio.record(resultHandler));
+    }
+
+    @Override
+    public void evaluateAccount(String account, Handler<AsyncResult<Double>> resultHandler) {
+        delegate.evaluateAccount(account, evaluate.record(resultHandler));
+    }
+
+    @Override
+    public void placeOrder(String account, JsonObject order, Handler<AsyncResult<JsonObject>> resultHandler) {
+        delegate.placeOrder(account, order, placeOrder.record(resultHandler));
+    }
+
+    @Override
+    public void cancelOrder(String account, String name, long orderId,
+                            Handler<AsyncResult<JsonObject>> resultHandler) {
+        delegate.cancelOrder(account, name, orderId, cancelOrder.record(resultHandler));
+    }
+
+    @Override
+    public void submitOrders(String account, List<JsonObject> orders,
+                             Handler<AsyncResult<List<JsonObject>>> resultHandler) {
+        delegate.submitOrders(account, orders, submitOrders.record(resultHandler));
+    }
+}
@@ -1,19 +1,22 @@
 package io.vertx.workshop.portfolio;
 
 import java.util.Map;
-import java.util.TreeMap;
 
 import io.vertx.codegen.annotations.DataObject;
 import io.vertx.core.json.JsonObject;
 
 /**
  * Structure representing a portfolio. It stores the available cash and the owned shares.
- * 
+ * <p>
+ * The owned shares are kept in {@link Holdings}, a primitive map keyed by the interned company ids, and converted
+ * from and to Json directly rather than through an intermediate map. The Json representation is the one of the
+ * generated converter: {@code cash} and {@code shares} (name -&gt; number, ordered by name).
+ * </p>
  */
 @DataObject(generateConverter = true)
 public class Portfolio {
 
-    private Map<String, Integer> shares = new TreeMap<>();
+    private Holdings shares = new Holdings();
 
     private double cash;
 
@@ -30,7 +33,7 @@ public class Portfolio {
      * @param other         the instance to copy
      */
     public Portfolio(Portfolio other) {
-        this.shares = new TreeMap<>(other.shares);
+        this.shares = new Holdings(other.shares);
         this.cash = other.cash;
     }
 
@@ -40,17 +43,28 @@ public class Portfolio {
      * @param json          the Json object
      */
     public Portfolio(JsonObject json) {
-        // A converter is generated to easy the conversion from and to Json.
-        PortfolioConverter.fromJson(json, this);
+        // Same as the generated converter, without copying the shares in an intermediate map
+        Object cash = json.getValue("cash");
+        if (cash instanceof Number) {
+            this.cash = ((Number) cash).doubleValue();
+        }
+        Object owned = json.getValue("shares");
+        if (owned instanceof JsonObject) {
+            for (Map.Entry<String, Object> entry : (JsonObject) owned) {
+                if (entry.getValue() instanceof Number) {
+                    shares.set(entry.getKey(), ((Number) entry.getValue()).intValue());
+                }
+            }
+        }
     }
 
     /**
-     * return a Json representation of the portfolio computed using the converter.
+     * return a Json representation of the portfolio, as computed by the generated converter.
      */
     public JsonObject toJson() {
-        JsonObject json = new JsonObject();
-        PortfolioConverter.toJson(this, json);
-        return json;
+        return new JsonObject()
+            .put("cash", cash)
+            .put("shares", shares.toJson());
     }
 
     /**
@@ -62,16 +76,27 @@ public class Portfolio {
     }
 
     /**
-     * Sets the owned shares. Method used by the converter.
+     * Sets the owned shares. Method used by the converter. The shares are copied, unless given as {@link Holdings}.
      * 
      * @param shares        the shares
      * @return the current {@link Portfolio}
      */
     public Portfolio setShares(Map<String, Integer> shares) {
-        this.shares = shares;
+        if (shares instanceof Holdings) {
+            this.shares = (Holdings) shares;
+        } else {
+            this.shares = shares == null ? new Holdings() : new Holdings(shares);
+        }
         return this;
     }
 
+    /**
+     * @return the owned shares, with primitive accessors
+     */
+    public Holdings holdings() {
+        return shares;
+    }
+
     /**
      * @return the available cash
      */
@@ -101,13 +126,24 @@ public class Portfolio {
      * @return          the number of owned shares, {@literal 0} is none
      */
     public int getAmount(String name) {
-        Integer current = shares.get(name);
-        if (current == null) {
-            return 0;
+        return shares.amount(name);
+    }
+
+    /**
+     * Sets the number of owned shares of the specific company, the company is removed from the portfolio when the
+     * number is {@literal 0}.
+     *
+     * @param name      the name of the company
+     * @param amount    the number of owned shares
+     */
+    public void setAmount(String name, int amount) {
+        if (amount == 0) {
+            shares.remove(name);
+        } else {
+            shares.set(name, amount);
         }
-        return current;
     }
-    
+
 
 }
 
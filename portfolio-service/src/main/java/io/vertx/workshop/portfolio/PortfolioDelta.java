@@ -0,0 +1,183 @@
+package io.vertx.workshop.portfolio;
+
+import io.vertx.codegen.annotations.DataObject;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A change of the portfolio of an account, sent instead of the whole {@link Portfolio}: the new number of shares of
+ * the traded company and the change of the cash.
+ * <p>
+ * The changes of a portfolio are numbered per account: the delta moves the portfolio from version {@code base} to
+ * version {@code sequence}. The versions are only comparable within an {@code epoch}, a new epoch starting when the
+ * account is loaded again (restart, recovery). A delta can thus only be applied on a portfolio at version
+ * {@code base} of the same epoch, see {@link PortfolioReplica}.
+ * </p>
+ * <p>
+ * A delta may also carry the whole {@code portfolio}, at version {@code sequence}, to (re)synchronize a replica.
+ * </p>
+ */
+@DataObject
+public class PortfolioDelta {
+
+    private String account;
+    private long epoch;
+    private long base;
+    private long sequence;
+    private String name;
+    private int amount;
+    private double cashDelta;
+    private Portfolio portfolio;
+
+    /**
+     * Creates a new instance of {@link PortfolioDelta}.
+     */
+    public PortfolioDelta() {
+        // Empty constructor
+    }
+
+    /**
+     * Creates a new instance of {@link PortfolioDelta} from this json object.
+     *
+     * @param json          the Json object
+     */
+    public PortfolioDelta(JsonObject json) {
+        this.account = json.getString("account");
+        this.epoch = json.getLong("epoch", 0L);
+        this.base = json.getLong("base", 0L);
+        this.sequence = json.getLong("sequence", 0L);
+        this.name = json.getString("name");
+        this.amount = json.getInteger("amount", 0);
+        this.cashDelta = json.getDouble("cashDelta", 0.0);
+        JsonObject full = json.getJsonObject("portfolio");
+        this.portfolio = full == null ? null : new Portfolio(full);
+    }
+
+    /**
+     * return a Json representation of the delta.
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject()
+            .put("account", account)
+            .put("epoch", epoch)
+            .put("base", base)
+            .put("sequence", sequence);
+        if (portfolio != null) {
+            return json.put("portfolio", portfolio.toJson());
+        }
+        return json
+            .put("name", name)
+            .put("amount", amount)
+            .put("cashDelta", cashDelta);
+    }
+
+    /**
+     * @return the account
+     */
+    public String getAccount() {
+        return account;
+    }
+
+    public PortfolioDelta setAccount(String account) {
+        this.account = account;
+        return this;
+    }
+
+    /**
+     * @return the epoch of the versions
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public PortfolioDelta setEpoch(long epoch) {
+        this.epoch = epoch;
+        return this;
+    }
+
+    /**
+     * @return the version of the portfolio the delta applies to
+     */
+    public long getBase() {
+        return base;
+    }
+
+    public PortfolioDelta setBase(long base) {
+        this.base = base;
+        return this;
+    }
+
+    /**
+     * @return the version of the portfolio once the delta is applied
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public PortfolioDelta setSequence(long sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+
+    /**
+     * @return the name of the traded company
+     */
+    public String getName() {
+        return name;
+    }
+
+    public PortfolioDelta setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * @return the number of shares of the company owned after the change
+     */
+    public int getAmount() {
+        return amount;
+    }
+
+    public PortfolioDelta setAmount(int amount) {
+        this.amount = amount;
+        return this;
+    }
+
+    /**
+     * @return the change of the cash
+     */
+    public double getCashDelta() {
+        return cashDelta;
+    }
+
+    public PortfolioDelta setCashDelta(double cashDelta) {
+        this.cashDelta = cashDelta;
+        return this;
+    }
+
+    /**
+     * @return the whole portfolio at version {@code sequence}, {@code null} for a change
+     */
+    public Portfolio getPortfolio() {
+        return portfolio;
+    }
+
+    public PortfolioDelta setPortfolio(Portfolio portfolio) {
+        this.portfolio = portfolio;
+        return this;
+    }
+
+    /**
+     * Applies the change on a portfolio at version {@code base}, or copies the whole portfolio.
+     *
+     * @param target the portfolio
+     */
+    public void applyTo(Portfolio target) {
+        if (portfolio != null) {
+            target.setCash(portfolio.getCash());
+            target.setShares(new Holdings(portfolio.holdings()));
+        } else {
+            target.setCash(target.getCash() + cashDelta);
+            target.setAmount(name, amount);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package io.vertx.workshop.portfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+/**
+ * A local replica of the portfolio of an account, maintained from the {@link PortfolioDelta changes} returned by
+ * {@link PortfolioService#buyDelta(String, String, int, Handler)} and
+ * {@link PortfolioService#sellDelta(String, String, int, Handler)}, so the whole portfolio does not have to be sent
+ * on each trade.
+ * <p>
+ * A change is applied if it follows the version of the replica. A change already covered by the replica (a reply
+ * arriving after a synchronization) is ignored. Otherwise, a change has been missed (a trade of the account made
+ * elsewhere, a fill of a resting order, a restart of the service...) and the replica synchronizes again with
+ * {@link PortfolioService#syncPortfolio(String, Handler)}. Until its first synchronization, the replica is empty.
+ * </p>
+ * <p>
+ * A replica is not thread-safe, it must be used from the context (event loop) that created it.
+ * </p>
+ */
+public class PortfolioReplica {
+
+    private final PortfolioService service;
+    private final String account;
+    private final Portfolio portfolio = new Portfolio();
+
+    private long epoch;
+    private long sequence = -1;
+    private List<Handler<AsyncResult<Portfolio>>> syncing;
+
+    /**
+     * Creates a new {@link PortfolioReplica}.
+     *
+     * @param service the portfolio service (proxy)
+     * @param account the account
+     */
+    public PortfolioReplica(PortfolioService service, String account) {
+        this.service = service;
+        this.account = account;
+    }
+
+    /**
+     * @return the replicated portfolio, must not be modified
+     */
+    public Portfolio portfolio() {
+        return portfolio;
+    }
+
+    /**
+     * @return the version of the replicated portfolio, {@code -1} until synchronized
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Buys shares, and updates the replica with the change.
+     *
+     * @param name          the name of the company
+     * @param amount        the amount
+     * @param resultHandler the result handler with the updated replica, or the failure of the buy
+     */
+    public void buy(String name, int amount, Handler<AsyncResult<Portfolio>> resultHandler) {
+        service.buyDelta(account, name, amount, ar -> onDelta(ar, resultHandler));
+    }
+
+    /**
+     * Sells shares, and updates the replica with the change.
+     *
+     * @param name          the name of the company
+     * @param amount        the amount
+     * @param resultHandler the result handler with the updated replica, or the failure of the sell
+     */
+    public void sell(String name, int amount, Handler<AsyncResult<Portfolio>> resultHandler) {
+        service.sellDelta(account, name, amount, ar -> onDelta(ar, resultHandler));
+    }
+
+    private void onDelta(AsyncResult<PortfolioDelta> ar, Handler<AsyncResult<Portfolio>> resultHandler) {
+        if (ar.failed()) {
+            resultHandler.handle(Future.failedFuture(ar.cause()));
+        } else if (apply(ar.result())) {
+            resultHandler.handle(Future.succeededFuture(portfolio));
+        } else {
+            sync(resultHandler);
+        }
+    }
+
+    /**
+     * Applies a change, or a whole portfolio, on the replica.
+     *
+     * @param delta the change
+     * @return {@code false} if the change cannot be applied and the replica must be synchronized
+     */
+    public boolean apply(PortfolioDelta delta) {
+        if (delta.getPortfolio() != null) {
+            if (delta.getEpoch() == epoch && delta.getSequence() <= sequence) {
+                // Older than the replica
+                return true;
+            }
+            delta.applyTo(portfolio);
+            epoch = delta.getEpoch();
+            sequence = delta.getSequence();
+            return true;
+        }
+        if (sequence < 0 || delta.getEpoch() != epoch) {
+            return false;
+        }
+        if (delta.getSequence() <= sequence) {
+            // Already covered
+            return true;
+        }
+        if (delta.getBase() != sequence) {
+            // A gap
+            return false;
+        }
+        delta.applyTo(portfolio);
+        sequence = delta.getSequence();
+        return true;
+    }
+
+    /**
+     * Synchronizes the replica with the whole portfolio. Concurrent synchronizations share a single call.
+     *
+     * @param resultHandler the result handler with the synchronized replica
+     */
+    public void sync(Handler<AsyncResult<Portfolio>> resultHandler) {
+        if (syncing != null) {
+            syncing.add(resultHandler);
+            return;
+        }
+        List<Handler<AsyncResult<Portfolio>>> waiters = new ArrayList<>();
+        waiters.add(resultHandler);
+        syncing = waiters;
+        service.syncPortfolio(account, ar -> {
+            syncing = null;
+            AsyncResult<Portfolio> result = ar.failed()
+                ? Future.failedFuture(ar.cause())
+                : Future.succeededFuture(portfolio);
+            if (ar.succeeded()) {
+                apply(ar.result());
+            }
+            for (Handler<AsyncResult<Portfolio>> waiter : waiters) {
+                waiter.handle(result);
+            }
+        });
+    }
+}
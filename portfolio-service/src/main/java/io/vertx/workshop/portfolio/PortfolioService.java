@@ -6,8 +6,19 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.json.JsonObject;
 
+import java.util.List;
+
 /**
- * A service managing a portfolio.
+ * A service managing the portfolios of trading accounts.
+ * <p>
+ * The methods not taking an account operate on the {@link #DEFAULT_ACCOUNT} account.
+ * </p>
+ * <p>
+ * The buys and sells are priced by the service, with the last quote it received from the market for the company:
+ * the prices and the shares of the quote given by the caller are ignored, only its {@code name} is used. When the
+ * service has no fresh quote for the company, the order is rejected, unless the service is configured to fall back
+ * to the quote given by the caller.
+ * </p>
  * <p>
  * This service is an event bus service (a.k.a. a service proxy or async RPC). The client 
  * and server are generated at compile time.
@@ -28,6 +39,21 @@ public interface PortfolioService {
      */
     String EVENT_ADDRESS = "portfolio";
 
+    /**
+     * The address on which the changes of the portfolio valuation are sent
+     */
+    String VALUATION_ADDRESS = "portfolio.valuation";
+
+    /**
+     * The account used by the methods not taking an account
+     */
+    String DEFAULT_ACCOUNT = "default";
+
+    /**
+     * The maximum number of orders of a batch, see {@link #submitOrders(String, List, Handler)}
+     */
+    int MAX_BATCH_SIZE = 1000;
+
     /**
      * Gets the portfolio.
      * 
@@ -65,6 +91,159 @@ public interface PortfolioService {
      */
     void evaluate(Handler<AsyncResult<Double>> resultHandler);
 
+    /**
+     * Gets the portfolio of the given account. The account is created if it does not exist yet.
+     *
+     * @param account       the account
+     * @param resultHandler the result handler called when the portfolio has been retrieved. The async result
+     *                      indicates whether the call was successful or not.
+     */
+    void getAccountPortfolio(String account, Handler<AsyncResult<Portfolio>> resultHandler);
+
+    /**
+     * Buy `amount` shares of the given shares (quote) for the given account.
+     *
+     * @param account           the account
+     * @param amount            the amount
+     * @param quote             the last quote
+     * @param resultHandler     the result handler with the updated portfolio. If the action cannot be executed
+     *                          the async result is marked as a failure (not enough money, not enough shares
+     *                          available...)
+     */
+    void buyForAccount(String account, int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler);
+
+    /**
+     * Sell `amount` shares of the given shares (quote) for the given account.
+     *
+     * @param account           the account
+     * @param amount            the amount
+     * @param quote             the last quote
+     * @param resultHandler     the result handler with the updated portfolio. If the action cannot be executed,
+     *                          the async result is marked as a failure. (not enough share...)
+     */
+    void sellForAccount(String account, int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler);
+
+    /**
+     * Buy `amount` shares of the given company for the given account, at the last quote received by the service.
+     *
+     * @param account           the account
+     * @param name              the name of the company
+     * @param amount            the amount
+     * @param resultHandler     the result handler with the updated portfolio. If the action cannot be executed
+     *                          the async result is marked as a failure (no fresh quote, not enough money, not enough
+     *                          shares available...)
+     */
+    void buyShares(String account, String name, int amount, Handler<AsyncResult<Portfolio>> resultHandler);
 
+    /**
+     * Sell `amount` shares of the given company for the given account, at the last quote received by the service.
+     *
+     * @param account           the account
+     * @param name              the name of the company
+     * @param amount            the amount
+     * @param resultHandler     the result handler with the updated portfolio. If the action cannot be executed,
+     *                          the async result is marked as a failure. (no fresh quote, not enough share...)
+     */
+    void sellShares(String account, String name, int amount, Handler<AsyncResult<Portfolio>> resultHandler);
+
+    /**
+     * Buy `amount` shares of the given company for the given account, at the last quote received by the service, and
+     * reply with the change of the portfolio rather than the whole portfolio.
+     *
+     * @param account           the account
+     * @param name              the name of the company
+     * @param amount            the amount
+     * @param resultHandler     the result handler with the change of the portfolio. If the action cannot be executed
+     *                          the async result is marked as a failure (no fresh quote, not enough money, not enough
+     *                          shares available...)
+     */
+    void buyDelta(String account, String name, int amount, Handler<AsyncResult<PortfolioDelta>> resultHandler);
+
+    /**
+     * Sell `amount` shares of the given company for the given account, at the last quote received by the service, and
+     * reply with the change of the portfolio rather than the whole portfolio.
+     *
+     * @param account           the account
+     * @param name              the name of the company
+     * @param amount            the amount
+     * @param resultHandler     the result handler with the change of the portfolio. If the action cannot be executed,
+     *                          the async result is marked as a failure. (no fresh quote, not enough share...)
+     */
+    void sellDelta(String account, String name, int amount, Handler<AsyncResult<PortfolioDelta>> resultHandler);
+
+    /**
+     * Gets the whole portfolio of the given account with its version, to synchronize a replica maintained from the
+     * changes returned by {@link #buyDelta(String, String, int, Handler)} and
+     * {@link #sellDelta(String, String, int, Handler)}.
+     *
+     * @param account       the account
+     * @param resultHandler the result handler with the portfolio, in the {@code portfolio} of the delta
+     */
+    void syncPortfolio(String account, Handler<AsyncResult<PortfolioDelta>> resultHandler);
+
+    /**
+     * Evaluates the current value of the portfolio of the given account.
+     *
+     * @param account               the account
+     * @param resultHandler         the result handler with the valuation
+     */
+    void evaluateAccount(String account, Handler<AsyncResult<Double>> resultHandler);
+
+    /**
+     * Places an order for the given account in the order book of the company. The order is a Json object with:
+     * <ul>
+     * <li>{@code name}: the company</li>
+     * <li>{@code action}: {@code BUY} or {@code SELL}</li>
+     * <li>{@code type}: {@code LIMIT} (the default) or {@code MARKET}</li>
+     * <li>{@code amount}: the number of shares</li>
+     * <li>{@code price}: the limit price, for a limit order</li>
+     * </ul>
+     * The order is matched against the resting orders and the market, and the remainder of a limit order rests in
+     * the book until filled or cancelled. The cash (buy) or the shares (sell) it needs are reserved meanwhile.
+     *
+     * @param account       the account
+     * @param order         the order
+     * @param resultHandler the result handler with the order status: {@code id} (0 if nothing rests in the book),
+     *                      {@code name}, {@code action}, {@code filled}, {@code remaining} (resting in the book) and
+     *                      {@code status} ({@code FILLED}, {@code PARTIALLY_FILLED}, {@code NEW} or
+     *                      {@code CANCELLED}). The async result is marked as a failure if the order is invalid or
+     *                      cannot be funded.
+     */
+    void placeOrder(String account, JsonObject order, Handler<AsyncResult<JsonObject>> resultHandler);
+
+    /**
+     * Cancels a resting order of the given account.
+     *
+     * @param account       the account
+     * @param name          the company of the order
+     * @param orderId       the order id, given by {@link #placeOrder(String, JsonObject, Handler)}
+     * @param resultHandler the result handler with the order status: {@code id}, {@code name} and {@code cancelled}
+     *                      (the cancelled number of shares). The async result is marked as a failure if the order
+     *                      is not in the book anymore.
+     */
+    void cancelOrder(String account, String name, long orderId, Handler<AsyncResult<JsonObject>> resultHandler);
+
+    /**
+     * Submits a batch of orders for the given account, in a single call. The orders are executed in order, one
+     * after the other, and no other operation of the account is interleaved with them. Each order is a Json object
+     * with either:
+     * <ul>
+     * <li>{@code action} ({@code BUY} or {@code SELL}), {@code amount} and {@code name}: a buy or a sell at the
+     * last quote, as {@link #buyShares(String, String, int, Handler)} and
+     * {@link #sellShares(String, String, int, Handler)} do. A {@code quote} may be given instead of the name, as for
+     * {@link #buyForAccount(String, int, JsonObject, Handler)}</li>
+     * <li>or, with a {@code type}, the fields of an order placed in the book, see
+     * {@link #placeOrder(String, JsonObject, Handler)}</li>
+     * </ul>
+     * An order failing does not fail the batch, the next orders are still executed.
+     *
+     * @param account       the account
+     * @param orders        the orders, at most {@link #MAX_BATCH_SIZE}
+     * @param resultHandler the result handler with the status of each order, in the order of the batch: the order
+     *                      status as given by {@link #placeOrder(String, JsonObject, Handler)}, or, if the order
+     *                      failed, the {@code REJECTED} status and the reason in {@code message}. The async result is
+     *                      marked as a failure if the batch is too large.
+     */
+    void submitOrders(String account, List<JsonObject> orders, Handler<AsyncResult<List<JsonObject>>> resultHandler);
 
-}
\ No newline at end of file
+}
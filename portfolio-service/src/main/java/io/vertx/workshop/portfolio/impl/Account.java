@@ -0,0 +1,256 @@
+package io.vertx.workshop.portfolio.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.vertx.workshop.portfolio.Portfolio;
+
+/**
+ * A trading account: its portfolio and the incrementally maintained value of its owned shares.
+ * <p>
+ * Accounts are owned by a single {@link PortfolioServiceImpl} (shard), and are only accessed from its event loop.
+ * </p>
+ */
+class Account {
+
+    private final String id;
+    private final Portfolio portfolio;
+
+    /**
+     * The bid used to value each owned company, and the resulting value of the owned shares.
+     */
+    private final Map<String, Mark> marks = new HashMap<>();
+    private double marketValue;
+
+    /**
+     * The marks, linked from the oldest to the newest by time. The quotes are received in time order, so a new quote
+     * links its mark as the newest in constant time, and the oldest mark is always at hand.
+     */
+    private Mark oldest;
+    private Mark newest;
+
+    private static final class Mark {
+        private double bid;
+        private long time;
+        private Mark older;
+        private Mark newer;
+    }
+
+    /**
+     * The number of operations (buy or sell) executed on the account since it was loaded.
+     */
+    private long sequence;
+
+    /**
+     * The version of the portfolio, incremented on each change as it is applied, and the epoch identifying the
+     * versions of this instance of the account (they restart when the account is loaded again).
+     */
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+    private long version;
+
+    /**
+     * The cash and the shares reserved by the resting orders of the account. The orders are not persisted, so the
+     * reservations are not either.
+     */
+    private double reservedCash;
+    private final Map<String, Integer> reservedShares = new HashMap<>();
+
+    Account(String id, double initialCash) {
+        this(id, new Portfolio().setCash(initialCash));
+    }
+
+    /**
+     * Creates an account from a recovered portfolio. The owned shares are valued when their next quote is received.
+     */
+    Account(String id, Portfolio portfolio) {
+        this.id = id;
+        this.portfolio = portfolio;
+    }
+
+    String id() {
+        return id;
+    }
+
+    Portfolio portfolio() {
+        return portfolio;
+    }
+
+    double marketValue() {
+        return marketValue;
+    }
+
+    /**
+     * @return the sequence number of a new operation
+     */
+    long nextSequence() {
+        return ++sequence;
+    }
+
+    long epoch() {
+        return epoch;
+    }
+
+    long version() {
+        return version;
+    }
+
+    /**
+     * Records a change of the portfolio.
+     */
+    void changed() {
+        version++;
+    }
+
+    /**
+     * @return the cash not reserved by the resting buy orders
+     */
+    double availableCash() {
+        return portfolio.getCash() - reservedCash;
+    }
+
+    /**
+     * @param name the company
+     * @return the owned shares not reserved by the resting sell orders
+     */
+    int availableShares(String name) {
+        return portfolio.getAmount(name) - reservedShares.getOrDefault(name, 0);
+    }
+
+    /**
+     * Reserves (or releases, when negative) cash for the resting buy orders.
+     *
+     * @param amount the amount of cash
+     */
+    void reserveCash(double amount) {
+        // Avoid accumulating rounding errors once the orders are gone
+        reservedCash = Math.max(0.0, reservedCash + amount);
+    }
+
+    /**
+     * Reserves (or releases, when negative) shares for the resting sell orders.
+     *
+     * @param name   the company
+     * @param amount the number of shares
+     */
+    void reserveShares(String name, int amount) {
+        int reserved = reservedShares.getOrDefault(name, 0) + amount;
+        if (reserved <= 0) {
+            reservedShares.remove(name);
+        } else {
+            reservedShares.put(name, reserved);
+        }
+    }
+
+    /**
+     * Checks whether the value is up to date: every owned company is valued with a quote received since the given
+     * time.
+     *
+     * @param since the time of the oldest acceptable quote
+     * @return {@code true} if {@link #marketValue()} can be used
+     */
+    boolean isMarkedSince(long since) {
+        return marks.size() == portfolio.getShares().size() && (oldest == null || oldest.time >= since);
+    }
+
+    /**
+     * Updates the value after a buy or a sell.
+     *
+     * @param name      the company
+     * @param current   the number of shares owned before the operation
+     * @param newAmount the number of shares owned after the operation
+     * @param bid       the bid used to value the shares
+     * @param time      the time the bid was received from the market, 0 if it does not come from the market
+     */
+    void revalue(String name, int current, int newAmount, double bid, long time) {
+        Mark mark = marks.get(name);
+        if (mark != null) {
+            marketValue -= current * mark.bid;
+        }
+        if (newAmount == 0) {
+            if (mark != null) {
+                marks.remove(name);
+                unlink(mark);
+            }
+        } else {
+            if (mark == null) {
+                mark = new Mark();
+                marks.put(name, mark);
+            }
+            mark.bid = bid;
+            setTime(mark, time);
+            marketValue += newAmount * bid;
+        }
+    }
+
+    /**
+     * Updates the value after a new quote for an owned company.
+     *
+     * @param name the company
+     * @param bid  the new bid
+     * @param time the time the quote was received
+     * @return {@code true} if the value changed
+     */
+    boolean mark(String name, double bid, long time) {
+        Mark mark = marks.get(name);
+        if (mark == null) {
+            // Not valued yet (recovered account)
+            mark = new Mark();
+            mark.bid = bid;
+            marks.put(name, mark);
+            setTime(mark, time);
+            marketValue += portfolio.getAmount(name) * bid;
+            return true;
+        }
+        setTime(mark, time);
+        if (mark.bid == bid) {
+            return false;
+        }
+        marketValue += portfolio.getAmount(name) * (bid - mark.bid);
+        mark.bid = bid;
+        return true;
+    }
+
+    private void setTime(Mark mark, long time) {
+        unlink(mark);
+        mark.time = time;
+        if (oldest == null || time <= oldest.time) {
+            mark.newer = oldest;
+            if (oldest != null) {
+                oldest.older = mark;
+            } else {
+                newest = mark;
+            }
+            oldest = mark;
+            return;
+        }
+        // Only the marks revalued after a trade may be older than the newest one
+        Mark older = newest;
+        while (older.time > time) {
+            older = older.older;
+        }
+        mark.older = older;
+        mark.newer = older.newer;
+        if (older.newer != null) {
+            older.newer.older = mark;
+        } else {
+            newest = mark;
+        }
+        older.newer = mark;
+    }
+
+    private void unlink(Mark mark) {
+        if (mark.older != null) {
+            mark.older.newer = mark.newer;
+        } else if (oldest == mark) {
+            oldest = mark.newer;
+        }
+        if (mark.newer != null) {
+            mark.newer.older = mark.older;
+        } else if (newest == mark) {
+            newest = mark.older;
+        }
+        mark.older = null;
+        mark.newer = null;
+    }
+}
@@ -0,0 +1,72 @@
+package io.vertx.workshop.portfolio.impl;
+
+import java.util.Arrays;
+
+/**
+ * A consistent hash ring assigning accounts to shards.
+ * <p>
+ * Each shard is placed {@code virtualNodes} times on the ring, an account belongs to the first shard found clockwise
+ * from the hash of its id. Changing the number of shards only moves the accounts of the added or removed shards. The
+ * ring is immutable and only relies on {@link String#hashCode()}, so every node of the cluster computes the same
+ * assignment.
+ * </p>
+ */
+public class ConsistentHashRing {
+
+    private final int[] points;
+    private final int[] shards;
+
+    /**
+     * Creates a new {@link ConsistentHashRing}.
+     *
+     * @param shards       the number of shards
+     * @param virtualNodes the number of points of each shard on the ring
+     */
+    public ConsistentHashRing(int shards, int virtualNodes) {
+        if (shards <= 0 || virtualNodes <= 0) {
+            throw new IllegalArgumentException("The number of shards and virtual nodes must be greater than 0");
+        }
+        long[] ring = new long[shards * virtualNodes];
+        for (int shard = 0; shard < shards; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                // Sort by point, then shard, packed in a long
+                int point = hash("shard-" + shard + "#" + node);
+                ring[shard * virtualNodes + node] = ((long) point << 32) | shard;
+            }
+        }
+        Arrays.sort(ring);
+        this.points = new int[ring.length];
+        this.shards = new int[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = (int) (ring[i] >> 32);
+            this.shards[i] = (int) ring[i];
+        }
+    }
+
+    /**
+     * Gets the shard owning the given account.
+     *
+     * @param account the account id
+     * @return the shard, between 0 and the number of shards (excluded)
+     */
+    public int shard(String account) {
+        int index = Arrays.binarySearch(points, hash(account));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return shards[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Spreads the bits of {@link String#hashCode()} (murmur3 finalizer), so close ids land far from each other.
+     */
+    private static int hash(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
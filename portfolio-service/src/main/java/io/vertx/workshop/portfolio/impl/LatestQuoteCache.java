@@ -0,0 +1,81 @@
+package io.vertx.workshop.portfolio.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.vertx.workshop.common.Quote;
+
+/**
+ * Keeps the last quote received from the market for each company, so the portfolio can be evaluated without calling
+ * the quote service. Quotes received more than {@code maxAge} ms ago are considered stale and are not returned.
+ * <p>
+ * A single cache is shared by the shards of a node: it is updated by the {@link MarketDispatcher} and read from the
+ * event loops of the shards, so the entries are immutable and replaced on each quote.
+ * </p>
+ */
+public class LatestQuoteCache {
+
+    private final Map<String, Entry> quotes = new ConcurrentHashMap<>();
+    private final long maxAge;
+
+    private static final class Entry {
+        private final Quote quote;
+        private final long received;
+
+        private Entry(Quote quote, long received) {
+            this.quote = quote;
+            this.received = received;
+        }
+    }
+
+    /**
+     * Creates a new {@link LatestQuoteCache}.
+     *
+     * @param maxAge the maximum age of the returned quotes, in ms
+     */
+    public LatestQuoteCache(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Records a quote received from the market.
+     *
+     * @param quote the quote
+     */
+    public void update(Quote quote) {
+        quotes.put(quote.getName(), new Entry(quote, System.currentTimeMillis()));
+    }
+
+    /**
+     * @return the maximum age of the returned quotes, in ms
+     */
+    public long maxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Gets the time the last quote of the given company was received.
+     *
+     * @param name the name of the company
+     * @return the time, {@code 0} if no quote has been received for this company
+     */
+    public long received(String name) {
+        Entry entry = quotes.get(name);
+        return entry == null ? 0 : entry.received;
+    }
+
+    /**
+     * Gets the last quote of the given company.
+     *
+     * @param name the name of the company
+     * @param now  the current time
+     * @return the quote, {@code null} if no quote has been received for this company or if it is stale
+     */
+    public Quote get(String name, long now) {
+        Entry entry = quotes.get(name);
+        if (entry == null || now - entry.received > maxAge) {
+            return null;
+        }
+        return entry.quote;
+    }
+}
@@ -0,0 +1,75 @@
+package io.vertx.workshop.portfolio.impl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.vertx.core.Context;
+import io.vertx.workshop.common.Quote;
+
+/**
+ * Dispatches the quotes received by the single market consumer of a node to its shards.
+ * <p>
+ * Each quote is recorded in the {@link LatestQuoteCache} shared by the shards, then handed to the shards holding the
+ * company, on their own event loop. The other shards read the quote from the cache when they need it, so a node
+ * receives and decodes the market once, whatever the number of shards.
+ * </p>
+ */
+class MarketDispatcher {
+
+    private final LatestQuoteCache quotes;
+    private final List<Shard> shards = new CopyOnWriteArrayList<>();
+
+    private static final class Shard {
+        private final PortfolioServiceImpl service;
+        private final Context context;
+
+        private Shard(PortfolioServiceImpl service, Context context) {
+            this.service = service;
+            this.context = context;
+        }
+    }
+
+    MarketDispatcher(LatestQuoteCache quotes) {
+        this.quotes = quotes;
+    }
+
+    /**
+     * @return the last quotes received from the market
+     */
+    LatestQuoteCache quotes() {
+        return quotes;
+    }
+
+    /**
+     * Registers a shard, its quotes being handled on the given context.
+     *
+     * @param service the service of the shard
+     * @param context the context of the shard
+     */
+    void register(PortfolioServiceImpl service, Context context) {
+        shards.add(new Shard(service, context));
+    }
+
+    /**
+     * Unregisters a shard.
+     *
+     * @param service the service of the shard
+     */
+    void unregister(PortfolioServiceImpl service) {
+        shards.removeIf(shard -> shard.service == service);
+    }
+
+    /**
+     * Handles a quote received from the market.
+     *
+     * @param quote the quote
+     */
+    void dispatch(Quote quote) {
+        quotes.update(quote);
+        for (Shard shard : shards) {
+            if (shard.service.holds(quote.getName())) {
+                shard.context.runOnContext(v -> shard.service.onQuote(quote));
+            }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package io.vertx.workshop.portfolio.impl;
+
+import java.util.Arrays;
+
+/**
+ * A limit order book of a company, matching the orders by price-time priority.
+ * <p>
+ * The prices are expressed in ticks ({@link #TICKS_PER_UNIT} per currency unit). Each side keeps its price levels in
+ * an array sorted by key, the best level last, the key of a bid being its price and the key of an ask the opposite
+ * of its price, so new levels near the top of the book are inserted with little copy. A level holds its orders in
+ * arrival order, in an intrusive linked list. The orders and the levels are pooled, and the order ids give the slot
+ * of the order in the pool (low 32 bits) and the generation of the slot (high 32 bits), so cancels need no lookup
+ * table. Nothing is boxed or allocated once the pools are warm.
+ * </p>
+ * <p>
+ * An incoming order is first {@link #match(boolean, long, int, Object) matched} against the resting orders of the
+ * other side, at their price, and its remainder may then {@link #rest(boolean, long, int, Object) rest} in the book.
+ * Each fill is reported to the {@link FillListener} given at creation. An order never trades with the resting orders
+ * of its own owner: they are cancelled when reached, and reported to the listener too.
+ * </p>
+ * This class is not thread safe, it is meant to be used from the event loop of a shard.
+ */
+public final class OrderBook {
+
+    /**
+     * The number of ticks per currency unit.
+     */
+    public static final long TICKS_PER_UNIT = 100;
+
+    /**
+     * Receives the fills of the book.
+     */
+    @FunctionalInterface
+    public interface FillListener {
+
+        /**
+         * Called for each fill, at the price of the resting (maker) order.
+         *
+         * @param maker          the owner of the resting order
+         * @param makerId        the id of the resting order
+         * @param makerRemaining the quantity of the resting order still in the book, 0 if it is now filled
+         * @param taker          the owner of the incoming order
+         * @param takerBuys      whether the incoming order buys
+         * @param price          the price, in ticks
+         * @param quantity       the quantity
+         */
+        void fill(Object maker, long makerId, int makerRemaining, Object taker, boolean takerBuys, long price,
+                  int quantity);
+
+        /**
+         * Called when a resting order is cancelled because an incoming order of the same owner reached it.
+         *
+         * @param owner    the owner of both orders
+         * @param id       the id of the cancelled order
+         * @param buy      whether the cancelled order buys
+         * @param price    the price of the cancelled order, in ticks
+         * @param quantity the quantity removed from the book
+         */
+        default void selfTrade(Object owner, long id, boolean buy, long price, int quantity) {
+            // Nothing by default
+        }
+    }
+
+    private static final class Order {
+        private final int slot;
+        private int generation;
+        private boolean buy;
+        private long price;
+        private int remaining;
+        private Object owner;
+        private Level level;
+        private Order prev;
+        private Order next;
+
+        private Order(int slot) {
+            this.slot = slot;
+        }
+
+        private long id() {
+            return ((long) generation << 32) | slot;
+        }
+    }
+
+    private static final class Level {
+        private long key;
+        private long quantity;
+        private Order head;
+        private Order tail;
+        private Level nextFree;
+    }
+
+    private static final class Side {
+        private long[] keys = new long[64];
+        private Level[] levels = new Level[64];
+        private int size;
+
+        /**
+         * Finds the index of a key, or {@code -(insertion point) - 1}.
+         */
+        private int find(long key) {
+            return Arrays.binarySearch(keys, 0, size, key);
+        }
+
+        private Level best() {
+            return size == 0 ? null : levels[size - 1];
+        }
+
+        private void insert(int index, Level level) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                levels = Arrays.copyOf(levels, size * 2);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(levels, index, levels, index + 1, size - index);
+            keys[index] = level.key;
+            levels[index] = level;
+            size++;
+        }
+
+        private void remove(int index) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(levels, index + 1, levels, index, size - index - 1);
+            size--;
+            levels[size] = null;
+        }
+    }
+
+    private final FillListener listener;
+    private final Side bids = new Side();
+    private final Side asks = new Side();
+
+    private Order[] orders = new Order[1024];
+    private int slots;
+    private int[] free = new int[1024];
+    private int freeCount;
+    private Level freeLevels;
+    private int resting;
+
+    /**
+     * Creates a new {@link OrderBook}.
+     *
+     * @param listener the listener receiving the fills
+     */
+    public OrderBook(FillListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Converts a price to ticks, rounded to the nearest tick.
+     *
+     * @param price the price
+     * @return the price in ticks
+     */
+    public static long ticks(double price) {
+        return Math.round(price * TICKS_PER_UNIT);
+    }
+
+    /**
+     * Converts the limit price of an order to ticks, rounded so that the order never trades beyond this price: down
+     * for a buy, up for a sell.
+     *
+     * @param price the price
+     * @param buy   whether the order buys
+     * @return the price in ticks
+     */
+    public static long ticks(double price, boolean buy) {
+        // Tolerate the representation error of the prices given in decimal
+        double ticks = price * TICKS_PER_UNIT;
+        return buy ? (long) Math.floor(ticks + 1e-6) : (long) Math.ceil(ticks - 1e-6);
+    }
+
+    /**
+     * Converts a price in ticks to a price.
+     *
+     * @param ticks the price in ticks
+     * @return the price
+     */
+    public static double price(long ticks) {
+        return (double) ticks / TICKS_PER_UNIT;
+    }
+
+    /**
+     * Matches an incoming order against the resting orders of the other side, best price first, then oldest first,
+     * while their price is acceptable. Nothing is left in the book: a market order uses {@link Long#MAX_VALUE} (buy)
+     * or {@code 0} (sell) as limit. The resting orders of the same owner are cancelled instead of being traded.
+     *
+     * @param buy      whether the incoming order buys
+     * @param limit    the worst acceptable price, in ticks
+     * @param quantity the quantity
+     * @param owner    the owner of the incoming order, given to the listener
+     * @return the quantity not filled
+     */
+    public int match(boolean buy, long limit, int quantity, Object owner) {
+        Side side = buy ? asks : bids;
+        while (quantity > 0) {
+            Level level = side.best();
+            if (level == null) {
+                break;
+            }
+            long price = buy ? -level.key : level.key;
+            if (buy ? price > limit : price < limit) {
+                break;
+            }
+            while (quantity > 0 && level.head != null) {
+                Order maker = level.head;
+                if (maker.owner == owner) {
+                    // Self-trade prevention: the resting order is cancelled, the incoming one goes on
+                    long makerId = maker.id();
+                    int cancelled = maker.remaining;
+                    level.quantity -= cancelled;
+                    unlink(maker);
+                    release(maker);
+                    listener.selfTrade(owner, makerId, !buy, price, cancelled);
+                    continue;
+                }
+                int filled = Math.min(quantity, maker.remaining);
+                quantity -= filled;
+                maker.remaining -= filled;
+                level.quantity -= filled;
+                long makerId = maker.id();
+                Object makerOwner = maker.owner;
+                int makerRemaining = maker.remaining;
+                if (makerRemaining == 0) {
+                    unlink(maker);
+                    release(maker);
+                }
+                listener.fill(makerOwner, makerId, makerRemaining, owner, buy, price, filled);
+            }
+            if (level.head == null) {
+                side.remove(side.size - 1);
+                releaseLevel(level);
+            }
+        }
+        return quantity;
+    }
+
+    /**
+     * Adds a resting order, behind the orders of the same price. The order must not cross the book, it is expected
+     * to have been {@link #match(boolean, long, int, Object) matched} first.
+     *
+     * @param buy      whether the order buys
+     * @param price    the price, in ticks
+     * @param quantity the quantity
+     * @param owner    the owner of the order, not {@code null}
+     * @return the id of the order, never 0
+     */
+    public long rest(boolean buy, long price, int quantity, Object owner) {
+        if (quantity <= 0 || owner == null) {
+            throw new IllegalArgumentException("The quantity must be positive and the owner set");
+        }
+        Side side = buy ? bids : asks;
+        long key = buy ? price : -price;
+        int index = side.find(key);
+        Level level;
+        if (index >= 0) {
+            level = side.levels[index];
+        } else {
+            level = newLevel(key);
+            side.insert(-index - 1, level);
+        }
+        Order order = newOrder();
+        order.buy = buy;
+        order.price = price;
+        order.remaining = quantity;
+        order.owner = owner;
+        order.level = level;
+        order.prev = level.tail;
+        if (level.tail == null) {
+            level.head = order;
+        } else {
+            level.tail.next = order;
+        }
+        level.tail = order;
+        level.quantity += quantity;
+        resting++;
+        return order.id();
+    }
+
+    /**
+     * Cancels a resting order.
+     *
+     * @param id the id of the order
+     * @return the quantity removed from the book, 0 if the order is not in the book (filled or cancelled)
+     */
+    public int cancel(long id) {
+        Order order = lookup(id);
+        if (order == null) {
+            return 0;
+        }
+        int remaining = order.remaining;
+        Level level = order.level;
+        level.quantity -= remaining;
+        unlink(order);
+        if (level.head == null) {
+            Side side = order.buy ? bids : asks;
+            side.remove(side.find(level.key));
+            releaseLevel(level);
+        }
+        release(order);
+        return remaining;
+    }
+
+    /**
+     * @param id the id of an order
+     * @return the owner of the order, {@code null} if it is not in the book
+     */
+    public Object owner(long id) {
+        Order order = lookup(id);
+        return order == null ? null : order.owner;
+    }
+
+    /**
+     * @param id the id of an order in the book
+     * @return whether the order buys
+     */
+    public boolean isBuy(long id) {
+        Order order = lookup(id);
+        return order != null && order.buy;
+    }
+
+    /**
+     * @param id the id of an order
+     * @return the price of the order in ticks, 0 if it is not in the book
+     */
+    public long priceOf(long id) {
+        Order order = lookup(id);
+        return order == null ? 0 : order.price;
+    }
+
+    /**
+     * @return the best bid in ticks, 0 if there is no bid
+     */
+    public long bestBid() {
+        Level level = bids.best();
+        return level == null ? 0 : level.key;
+    }
+
+    /**
+     * @return the best ask in ticks, {@link Long#MAX_VALUE} if there is no ask
+     */
+    public long bestAsk() {
+        Level level = asks.best();
+        return level == null ? Long.MAX_VALUE : -level.key;
+    }
+
+    /**
+     * @param buy   the side
+     * @param price the price, in ticks
+     * @return the resting quantity at the given price
+     */
+    public long depth(boolean buy, long price) {
+        Side side = buy ? bids : asks;
+        int index = side.find(buy ? price : -price);
+        return index < 0 ? 0 : side.levels[index].quantity;
+    }
+
+    /**
+     * @return the number of resting orders
+     */
+    public int size() {
+        return resting;
+    }
+
+    private Order lookup(long id) {
+        int slot = (int) id;
+        if (slot < 0 || slot >= slots) {
+            return null;
+        }
+        Order order = orders[slot];
+        return order.owner != null && order.id() == id ? order : null;
+    }
+
+    private void unlink(Order order) {
+        Level level = order.level;
+        if (order.prev == null) {
+            level.head = order.next;
+        } else {
+            order.prev.next = order.next;
+        }
+        if (order.next == null) {
+            level.tail = order.prev;
+        } else {
+            order.next.prev = order.prev;
+        }
+    }
+
+    private Order newOrder() {
+        if (freeCount > 0) {
+            return orders[free[--freeCount]];
+        }
+        if (slots == orders.length) {
+            orders = Arrays.copyOf(orders, slots * 2);
+            free = Arrays.copyOf(free, slots * 2);
+        }
+        Order order = new Order(slots);
+        order.generation = 1;
+        orders[slots++] = order;
+        return order;
+    }
+
+    private void release(Order order) {
+        // A new generation, so the id of the released order does not match the next order of the slot
+        if (++order.generation == 0) {
+            order.generation = 1;
+        }
+        order.owner = null;
+        order.level = null;
+        order.prev = null;
+        order.next = null;
+        free[freeCount++] = order.slot;
+        resting--;
+    }
+
+    private Level newLevel(long key) {
+        Level level = freeLevels;
+        if (level == null) {
+            level = new Level();
+        } else {
+            freeLevels = level.nextFree;
+            level.nextFree = null;
+        }
+        level.key = key;
+        level.quantity = 0;
+        return level;
+    }
+
+    private void releaseLevel(Level level) {
+        level.head = null;
+        level.tail = null;
+        level.nextFree = freeLevels;
+        freeLevels = level;
+    }
+}
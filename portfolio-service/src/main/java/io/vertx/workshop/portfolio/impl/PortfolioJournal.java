@@ -0,0 +1,445 @@
+package io.vertx.workshop.portfolio.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.workshop.portfolio.Portfolio;
+
+/**
+ * The local persistence of the accounts of a shard: an append-only journal and periodic snapshots.
+ * <p>
+ * Each buy and sell appends a record holding the new state of the changed position (account, company, owned shares
+ * and cash) to a memory-mapped journal segment. Records are absolute, replaying a record twice is harmless. The
+ * journal uses group commit: a single {@code force} is in flight at a time, on a worker thread, and all the records
+ * appended meanwhile are made durable by the next one. The completion handlers are called once the record is
+ * durable. When {@code sync} is disabled, the handlers are called immediately and the records survive a process crash
+ * but not a machine crash.
+ * </p>
+ * <p>
+ * A snapshot writes all the accounts to a compact binary file, the journal is then rolled to a new segment and the
+ * segments covered by the snapshot are deleted. The recovery loads the last snapshot and only replays the records
+ * written after it. Records and snapshots are checksummed, a torn record ends the replay of its segment.
+ * </p>
+ * This class is not thread safe, it is meant to be used from the event loop of the shard.
+ */
+public class PortfolioJournal {
+
+    private static final int SNAPSHOT_MAGIC = 0x50465331;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private final Vertx vertx;
+    private final File directory;
+    private final int segmentSize;
+    private final boolean sync;
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer segment;
+    private long sequence;
+    private boolean rolled;
+    private boolean snapshotting;
+    private long snapshotSequence = -1;
+
+    /**
+     * The segments written since the last commit, and the handlers waiting for it.
+     */
+    private Set<MappedByteBuffer> dirty = newBufferSet();
+    private List<Handler<AsyncResult<Void>>> waiting = new ArrayList<>();
+    private boolean committing;
+
+    /**
+     * The state recovered from a journal directory.
+     */
+    public static class Recovery {
+        private final Map<String, Portfolio> accounts;
+        private final long sequence;
+
+        Recovery(Map<String, Portfolio> accounts, long sequence) {
+            this.accounts = accounts;
+            this.sequence = sequence;
+        }
+
+        /**
+         * @return the recovered portfolios (account -&gt; portfolio)
+         */
+        public Map<String, Portfolio> accounts() {
+            return accounts;
+        }
+
+        /**
+         * @return the sequence of the last recovered record
+         */
+        public long sequence() {
+            return sequence;
+        }
+    }
+
+    /**
+     * Creates a new {@link PortfolioJournal}, {@link #open(long)} must be called before appending records.
+     *
+     * @param vertx       the vert.x instance, used to run the blocking operations
+     * @param directory   the directory of the journal segments and snapshots
+     * @param segmentSize the size of a journal segment, in bytes
+     * @param sync        whether the records are forced to the storage device before being acknowledged
+     */
+    public PortfolioJournal(Vertx vertx, File directory, int segmentSize, boolean sync) {
+        this.vertx = vertx;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+    }
+
+    /**
+     * Recovers the state stored in the given directory: the last snapshot and the records appended after it. This
+     * method blocks.
+     *
+     * @param directory the journal directory
+     * @return the recovered state, empty if the directory does not exist
+     */
+    public static Recovery recover(File directory) {
+        Map<String, Portfolio> accounts = new HashMap<>();
+        long sequence = 0;
+        try {
+            File[] snapshots = list(directory, SNAPSHOT_PREFIX);
+            // Use the most recent valid snapshot
+            for (int i = snapshots.length - 1; i >= 0; i--) {
+                Long loaded = readSnapshot(snapshots[i], accounts);
+                if (loaded != null) {
+                    sequence = loaded;
+                    break;
+                }
+                accounts.clear();
+            }
+            for (File file : list(directory, SEGMENT_PREFIX)) {
+                sequence = replay(file, sequence, accounts);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Recovery(accounts, sequence);
+    }
+
+    /**
+     * Opens a new journal segment. This method blocks.
+     *
+     * @param sequence the sequence of the last record already written
+     */
+    public void open(long sequence) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Cannot create the journal directory " + directory);
+        }
+        this.sequence = sequence;
+        roll();
+    }
+
+    /**
+     * @return the sequence of the last appended record
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Appends the new state of a position.
+     *
+     * @param account the account
+     * @param company the name of the company
+     * @param owned   the number of owned shares
+     * @param cash    the cash of the account
+     * @param done    called when the record is durable
+     */
+    public void append(String account, String company, int owned, double cash, Handler<AsyncResult<Void>> done) {
+        byte[] accountBytes = account.getBytes(StandardCharsets.UTF_8);
+        byte[] companyBytes = company.getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 2 + accountBytes.length + 2 + companyBytes.length + 4 + 8;
+        if (segment.remaining() < 4 + length + 4 + 4) {
+            // Keep the trailing zero length marking the end of the segment
+            roll();
+            rolled = true;
+        }
+
+        int start = segment.position() + 4;
+        segment.putInt(length)
+            .putLong(++sequence)
+            .putShort((short) accountBytes.length).put(accountBytes)
+            .putShort((short) companyBytes.length).put(companyBytes)
+            .putInt(owned)
+            .putDouble(cash);
+        segment.putInt(checksum(segment, start, length));
+
+        if (!sync) {
+            done.handle(Future.succeededFuture());
+            return;
+        }
+        dirty.add(segment);
+        waiting.add(done);
+        if (!committing) {
+            commit();
+        }
+    }
+
+    /**
+     * Forces the segments written since the last commit, and acknowledges the waiting records. The records appended
+     * while the commit is in flight are grouped in the next one.
+     */
+    private void commit() {
+        Set<MappedByteBuffer> buffers = dirty;
+        List<Handler<AsyncResult<Void>>> handlers = waiting;
+        dirty = newBufferSet();
+        waiting = new ArrayList<>();
+        committing = true;
+        vertx.<Void>executeBlocking(future -> {
+            for (MappedByteBuffer buffer : buffers) {
+                buffer.force();
+            }
+            future.complete();
+        }, true, ar -> {
+            for (Handler<AsyncResult<Void>> handler : handlers) {
+                handler.handle(ar);
+            }
+            committing = false;
+            if (!waiting.isEmpty()) {
+                commit();
+            }
+        });
+    }
+
+    /**
+     * @return the sequence covered by the last snapshot taken since the journal was opened, {@code -1} if none
+     */
+    public long snapshotSequence() {
+        return snapshotSequence;
+    }
+
+    /**
+     * @return {@code true} if a snapshot is being written
+     */
+    public boolean isSnapshotting() {
+        return snapshotting;
+    }
+
+    /**
+     * @return {@code true} if a snapshot should be taken: the journal rolled, or the segment is half full
+     */
+    public boolean needsSnapshot() {
+        return !snapshotting && (rolled || segment.position() > segmentSize / 2);
+    }
+
+    /**
+     * Writes a snapshot of the accounts, and deletes the journal segments it covers. The journal rolls to a new
+     * segment, the snapshot is written on a worker thread.
+     *
+     * @param accounts a copy of the accounts (account -&gt; portfolio)
+     * @param done     called when the snapshot has been written
+     */
+    public void snapshot(Map<String, Portfolio> accounts, Handler<AsyncResult<Void>> done) {
+        snapshotting = true;
+        long covered = sequence;
+        snapshotSequence = covered;
+        roll();
+        rolled = false;
+        File current = segmentFile(covered + 1);
+        vertx.<Void>executeBlocking(future -> {
+            try {
+                writeSnapshot(covered, accounts);
+                // Everything before the current segment is covered by the snapshot
+                for (File file : list(directory, SEGMENT_PREFIX)) {
+                    if (file.getName().compareTo(current.getName()) < 0) {
+                        Files.delete(file.toPath());
+                    }
+                }
+                for (File file : list(directory, SNAPSHOT_PREFIX)) {
+                    if (!file.getName().equals(snapshotFile(covered).getName())) {
+                        Files.delete(file.toPath());
+                    }
+                }
+                future.complete();
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, true, ar -> {
+            snapshotting = false;
+            done.handle(ar);
+        });
+    }
+
+    private void roll() {
+        File file = segmentFile(sequence + 1);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(segmentSize);
+            MappedByteBuffer previous = segment;
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            if (previous != null && sync) {
+                dirty.add(previous);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Buffers compare by content, the dirty segments are tracked by identity.
+     */
+    private static Set<MappedByteBuffer> newBufferSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private int checksum(ByteBuffer buffer, int start, int length) {
+        crc.reset();
+        ByteBuffer payload = buffer.duplicate();
+        // Through Buffer, the ByteBuffer overloads of Java 9+ do not exist on the Java 8 runtime
+        ((Buffer) payload).position(start).limit(start + length);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private File segmentFile(long first) {
+        return new File(directory, String.format("%s%020d.log", SEGMENT_PREFIX, first));
+    }
+
+    private File snapshotFile(long sequence) {
+        return new File(directory, String.format("%s%020d.bin", SNAPSHOT_PREFIX, sequence));
+    }
+
+    /**
+     * Lists the files with the given prefix, in sequence order.
+     */
+    private static File[] list(File directory, String prefix) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix) && !name.endsWith(".tmp"));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private void writeSnapshot(long covered, Map<String, Portfolio> accounts) throws IOException {
+        File tmp = new File(directory, snapshotFile(covered).getName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(covered);
+            out.writeInt(accounts.size());
+            for (Map.Entry<String, Portfolio> account : accounts.entrySet()) {
+                out.writeUTF(account.getKey());
+                out.writeDouble(account.getValue().getCash());
+                out.writeInt(account.getValue().getShares().size());
+                for (Map.Entry<String, Integer> share : account.getValue().getShares().entrySet()) {
+                    out.writeUTF(share.getKey());
+                    out.writeInt(share.getValue());
+                }
+            }
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp.toPath(), snapshotFile(covered).toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot, returns the sequence it covers or {@code null} if it is corrupted.
+     */
+    private static Long readSnapshot(File file, Map<String, Portfolio> accounts) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                return null;
+            }
+            long covered = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String account = in.readUTF();
+                Portfolio portfolio = new Portfolio().setCash(in.readDouble());
+                int shares = in.readInt();
+                for (int j = 0; j < shares; j++) {
+                    portfolio.holdings().set(in.readUTF(), in.readInt());
+                }
+                accounts.put(account, portfolio);
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            return in.readInt() == expected ? covered : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replays the records of a segment appended after the given sequence, returns the last sequence.
+     */
+    private static long replay(File file, long sequence, Map<String, Portfolio> accounts) throws IOException {
+        CRC32 crc = new CRC32();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if (length <= 0 || buffer.remaining() < length + 4) {
+                    break;
+                }
+                int start = buffer.position();
+                ByteBuffer payload = buffer.duplicate();
+                ((Buffer) payload).limit(start + length);
+                crc.reset();
+                crc.update(payload);
+                ((Buffer) buffer).position(start + length);
+                if (buffer.getInt() != (int) crc.getValue()) {
+                    // Torn write, the end of the journal
+                    break;
+                }
+                ((Buffer) buffer).position(start);
+                long seq = buffer.getLong();
+                String account = readString(buffer);
+                String company = readString(buffer);
+                int owned = buffer.getInt();
+                double cash = buffer.getDouble();
+                buffer.getInt();
+                if (seq <= sequence) {
+                    continue;
+                }
+                sequence = seq;
+                Portfolio portfolio = accounts.computeIfAbsent(account, k -> new Portfolio());
+                portfolio.setCash(cash);
+                portfolio.setAmount(company, owned);
+            }
+        }
+        return sequence;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
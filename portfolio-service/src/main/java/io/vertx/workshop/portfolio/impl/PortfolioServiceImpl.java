@@ -1,50 +1,317 @@
 package io.vertx.workshop.portfolio.impl;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.reactivex.Flowable;
 import io.reactivex.Single;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.ext.web.client.HttpResponse;
 import io.vertx.reactivex.ext.web.client.WebClient;
 import io.vertx.reactivex.ext.web.codec.BodyCodec;
-import io.vertx.reactivex.servicediscovery.ServiceDiscovery;
-import io.vertx.reactivex.servicediscovery.types.HttpEndpoint;
+import io.vertx.servicediscovery.types.HttpEndpoint;
+import io.vertx.workshop.common.DiscoveryCache;
+import io.vertx.workshop.common.Quote;
 import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.PortfolioDelta;
 import io.vertx.workshop.portfolio.PortfolioService;
 
 /**
- * The portfolio service implementation.
+ * The portfolio service implementation, managing the accounts of a shard.
+ * <p>
+ * Each account is owned by a single shard, see {@link ShardedPortfolioService}, so the accounts are only accessed
+ * from the event loop of the shard and never need to be synchronized.
+ * </p>
+ * <p>
+ * The value of the owned shares of each account is maintained incrementally: it is adjusted on each buy, sell and on
+ * each quote received for an owned company, and each change is published on {@link #VALUATION_ADDRESS}. While each
+ * owned company is valued with a fresh quote, evaluating a portfolio just returns this value. Otherwise (an owned
+ * company without recent quotes), the portfolio is evaluated from the last quotes received from the market
+ * ({@link LatestQuoteCache}) and the quote service is only called for the companies without a fresh enough quote.
+ * The web client of the quote service is retrieved once, from a {@link DiscoveryCache}.
+ * </p>
+ * <p>
+ * The buys and sells are priced with the last quote received from the market, the prices of the quote given by the
+ * caller being ignored, so the callers may only send the name of the company ({@link #buyShares(String, String, int,
+ * Handler)}). Without a fresh quote, the order is rejected or priced with the quote of the caller, depending on the
+ * {@link StaleQuotePolicy}.
+ * </p>
+ * <p>
+ * The buys and sells are routed into an {@link OrderBook} per company: they are first matched against the resting
+ * orders of the accounts of the shard, at the quoted price or better, and the remainder is traded with the market at
+ * the quoted price, as before. Limit and market orders can also be {@link #placeOrder(String, JsonObject, Handler)
+ * placed}: the remainder of a limit order rests in the book, the cash or the shares it needs being reserved, until
+ * it is filled or cancelled. An order never trades with the resting orders of its own account, they are cancelled
+ * and their reservation released. The books are per shard, so they only match the orders of the accounts of the
+ * shard, the market being the common counterparty. The resting orders are not journaled, they are lost on restart.
+ * </p>
+ * <p>
+ * When a {@link PortfolioJournal} is given, each buy and sell is journaled and only acknowledged once durable, and
+ * the accounts are periodically snapshotted. The trades are applied before being journaled, so if a record cannot be
+ * made durable, the accounts may no longer match the journal: the shard then stops trading, failing the orders and
+ * the pending acknowledgements, until it is restarted and recovered from the journal.
+ * </p>
+ * <p>
+ * The buys and sells may reply with a {@link PortfolioDelta} rather than the whole portfolio
+ * ({@link #buyDelta(String, String, int, Handler)}): the changes are numbered by the version of the account, bumped
+ * on each trade as it is applied, within an epoch drawn when the account is loaded.
+ * </p>
+ * <p>
+ * A batch of orders {@link #submitOrders(String, List, Handler) submitted} at once is applied in a single pass of
+ * the event loop, then acknowledged in a single reply once all its positions are durable.
+ * </p>
  */
 public class PortfolioServiceImpl implements PortfolioService {
 
+    /**
+     * The maximum number of companies requested to the quote service at once.
+     */
+    static final int EVALUATION_CHUNK_SIZE = 500;
+
+    /**
+     * What to do with a buy or a sell when the service has no fresh quote of the company.
+     */
+    public enum StaleQuotePolicy {
+        /**
+         * The order is rejected.
+         */
+        REJECT,
+        /**
+         * The order is priced with the quote given by the caller, if any.
+         */
+        CLIENT
+    }
+
     private final Vertx vertx;
-    private final Portfolio portfolio;
-    private final ServiceDiscovery discovery;
+    private final DiscoveryCache services;
+    private final LatestQuoteCache quotes;
+    private final double initialCash;
+    private final PortfolioJournal journal;
+    private final StaleQuotePolicy stalePolicy;
+
+    private final Map<String, Account> accounts = new HashMap<>();
+
+    /**
+     * The accounts owning shares of each company, to revalue them when a quote is received.
+     */
+    private final Map<String, Set<Account>> holders = new HashMap<>();
+
+    /**
+     * The companies held by the accounts, read by the {@link MarketDispatcher} from the market consumer.
+     */
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The order books of the companies traded by the accounts of the shard.
+     */
+    private final Map<String, OrderBook> books = new HashMap<>();
+
+    /**
+     * The operations of the incoming order being executed, sent once its new position is durable.
+     */
+    private final List<Runnable> takerEvents = new ArrayList<>();
+
+    /**
+     * The failure of the journal, once a record could not be made durable.
+     */
+    private Throwable failure;
+
+    public PortfolioServiceImpl(Vertx vertx, DiscoveryCache services, LatestQuoteCache quotes,
+                                double initialCash) {
+        this(vertx, services, quotes, initialCash, null);
+    }
 
-    public PortfolioServiceImpl(Vertx vertx, ServiceDiscovery discovery, double initialCash) {
+    public PortfolioServiceImpl(Vertx vertx, DiscoveryCache services, LatestQuoteCache quotes,
+                                double initialCash, PortfolioJournal journal) {
+        this(vertx, services, quotes, initialCash, journal, StaleQuotePolicy.REJECT);
+    }
+
+    public PortfolioServiceImpl(Vertx vertx, DiscoveryCache services, LatestQuoteCache quotes,
+                                double initialCash, PortfolioJournal journal, StaleQuotePolicy stalePolicy) {
         this.vertx = vertx;
-        this.portfolio = new Portfolio().setCash(initialCash);
-        this.discovery = discovery;
+        this.services = services;
+        this.quotes = quotes;
+        this.initialCash = initialCash;
+        this.journal = journal;
+        this.stalePolicy = stalePolicy;
+    }
+
+    /**
+     * Restores the accounts recovered from the journal.
+     *
+     * @param portfolios the recovered portfolios (account -&gt; portfolio)
+     */
+    public void restore(Map<String, Portfolio> portfolios) {
+        for (Map.Entry<String, Portfolio> entry : portfolios.entrySet()) {
+            Account account = new Account(entry.getKey(), entry.getValue());
+            accounts.put(account.id(), account);
+            for (String name : account.portfolio().getShares().keySet()) {
+                holders.computeIfAbsent(name, k -> new HashSet<>()).add(account);
+                held.add(name);
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of the accounts, if a journal is used, the accounts changed since the last snapshot and no
+     * snapshot is in progress.
+     */
+    public void snapshot() {
+        // Once the journal failed, the accounts may hold trades that are not durable, they must not be snapshotted
+        if (journal == null || failure != null || journal.isSnapshotting()
+            || journal.sequence() == journal.snapshotSequence()) {
+            return;
+        }
+        Map<String, Portfolio> copy = new HashMap<>();
+        for (Account account : accounts.values()) {
+            copy.put(account.id(), new Portfolio(account.portfolio()));
+        }
+        journal.snapshot(copy, ar -> {
+            if (ar.failed()) {
+                System.err.println("Unable to snapshot the portfolios: " + ar.cause());
+            }
+        });
+    }
+
+    /**
+     * Journals the new state of a position, and runs the given action once durable. If the record cannot be made
+     * durable, the shard stops trading: the action is not run, neither for this record nor for the following ones.
+     */
+    private void persist(Account account, String name, int newAmount, Handler<AsyncResult<Portfolio>> resultHandler,
+                         Runnable action) {
+        if (journal == null) {
+            action.run();
+            return;
+        }
+        journal.append(account.id(), name, newAmount, account.portfolio().getCash(), ar -> {
+            if (ar.failed() && failure == null) {
+                failure = ar.cause();
+                System.err.println("Unable to journal the account " + account.id() + ", the shard stops trading: "
+                    + ar.cause());
+            }
+            if (failure == null) {
+                action.run();
+            } else {
+                resultHandler.handle(Future.failedFuture(failed()));
+            }
+        });
+        if (journal.needsSnapshot()) {
+            snapshot();
+        }
+    }
+
+    /**
+     * @return the failure reported once the journal failed, the trades applied since may not be durable
+     */
+    private String failed() {
+        return "The portfolio shard stopped trading, the journal failed: " + failure.getMessage();
+    }
+
+    private Account account(String id) {
+        Account account = accounts.get(id);
+        if (account == null) {
+            account = new Account(id, initialCash);
+            accounts.put(id, account);
+        }
+        return account;
     }
 
     @Override
     public void getPortfolio(Handler<AsyncResult<Portfolio>> resultHandler) {
+        getAccountPortfolio(DEFAULT_ACCOUNT, resultHandler);
+    }
+
+    @Override
+    public void getAccountPortfolio(String account, Handler<AsyncResult<Portfolio>> resultHandler) {
         // TODO Call the given handler with a successful Async Result encapsulating the
         // `portfolio` object. The async result instance is created using
         // `Future.succeededFuture`
         // ---
-        resultHandler.handle(Future.succeededFuture(portfolio));
+        resultHandler.handle(Future.succeededFuture(account(account).portfolio()));
         // ---
 
     }
 
-    private void sendActionOnTheEventBus(String action, int amount, JsonObject quote, int newAmount) {
+    /**
+     * Checks whether an account of the shard owns shares of the given company.
+     *
+     * @param name the name of the company
+     * @return {@code true} if the quotes of the company must be {@link #onQuote(Quote) handled}
+     */
+    public boolean holds(String name) {
+        return held.contains(name);
+    }
+
+    /**
+     * Handles a quote received from the market, once recorded in the {@link LatestQuoteCache}: the value of the
+     * portfolios owning shares of the company is updated.
+     *
+     * @param quote the quote
+     */
+    public void onQuote(Quote quote) {
+        Set<Account> owners = holders.get(quote.getName());
+        if (owners == null) {
+            return;
+        }
+        long received = quotes.received(quote.getName());
+        for (Account account : owners) {
+            if (account.mark(quote.getName(), quote.getBid(), received)) {
+                sendValuationOnTheEventBus(account);
+            }
+        }
+    }
+
+    /**
+     * Updates the value of the portfolio after a buy or a sell.
+     */
+    private void revalue(Account account, String name, int current, int newAmount, double bid) {
+        // Prefer the last quote from the market to the one given by the trader
+        Quote last = quotes.get(name, System.currentTimeMillis());
+        if (last != null) {
+            account.revalue(name, current, newAmount, last.getBid(), quotes.received(name));
+        } else {
+            // Not a market price, the value is not up to date until the next quote
+            account.revalue(name, current, newAmount, bid, 0);
+        }
+        if (newAmount == 0) {
+            Set<Account> owners = holders.get(name);
+            if (owners != null && owners.remove(account) && owners.isEmpty()) {
+                holders.remove(name);
+                held.remove(name);
+            }
+        } else if (current == 0) {
+            holders.computeIfAbsent(name, k -> new HashSet<>()).add(account);
+            held.add(name);
+        }
+        sendValuationOnTheEventBus(account);
+    }
+
+    private void sendValuationOnTheEventBus(Account account) {
+        Portfolio portfolio = account.portfolio();
+        vertx.eventBus().publish(VALUATION_ADDRESS,
+                new JsonObject()
+                    .put("account", account.id())
+                    .put("cash", portfolio.getCash())
+                    .put("value", account.marketValue())
+                    .put("total", portfolio.getCash() + account.marketValue())
+                    .put("date", System.currentTimeMillis())
+        );
+    }
+
+    private void sendActionOnTheEventBus(Account account, String action, int amount, JsonObject quote,
+                                         int newAmount) {
         // TODO Broadcast a Json message to the `EVENT_ADDRESS` containing the
         // following keys: "action", "quote", "date"
         // (use System.currentTimeMillis()), "amount" and "owned" (newAmount)
@@ -52,6 +319,8 @@ public class PortfolioServiceImpl implements PortfolioService {
 
         vertx.eventBus().publish(EVENT_ADDRESS, 
                 new JsonObject()
+                    .put("account", account.id())
+                    .put("sequence", account.nextSequence())
                     .put("action", action)
                     .put("quote", quote)
                     .put("date", System.currentTimeMillis())
@@ -64,33 +333,88 @@ public class PortfolioServiceImpl implements PortfolioService {
 
     @Override
     public void evaluate(Handler<AsyncResult<Double>> resultHandler) {
-        // TODO
-        // ---
+        evaluateAccount(DEFAULT_ACCOUNT, resultHandler);
+    }
+
+    @Override
+    public void evaluateAccount(String id, Handler<AsyncResult<Double>> resultHandler) {
+        Account account = account(id);
+        long now = System.currentTimeMillis();
+        if (account.isMarkedSince(now - quotes.maxAge())) {
+            // Every owned company is valued with a fresh quote, the maintained value is up to date
+            resultHandler.handle(Future.succeededFuture(account.marketValue()));
+            return;
+        }
 
-        Single<WebClient> quotes = HttpEndpoint.rxGetWebClient(discovery,
-            service -> service.getName().equals("market-data"));
-        quotes.subscribe((client, err) -> {
-            if (err != null) {
-                resultHandler.handle(Future.failedFuture(err));
+        // Evaluate the owned shares using the last quotes received from the market
+        double sum = 0.0;
+        Map<String, Integer> missing = null;
+        for (Map.Entry<String, Integer> entry : account.portfolio().getShares().entrySet()) {
+            Quote quote = quotes.get(entry.getKey(), now);
+            if (quote != null) {
+                sum += quote.getBid() * entry.getValue();
             } else {
-                computeEvaluation(client, resultHandler);
+                if (missing == null) {
+                    missing = new HashMap<>();
+                }
+                missing.put(entry.getKey(), entry.getValue());
             }
-        });
+        }
 
-        // ---
+        if (missing == null) {
+            resultHandler.handle(Future.succeededFuture(sum));
+            return;
+        }
 
+        // Some quotes are unknown or stale, ask the quote service
+        double known = sum;
+        Map<String, Integer> shares = missing;
+        services.get("market-data", HttpEndpoint.TYPE, io.vertx.ext.web.client.WebClient.class, ar -> {
+            if (ar.failed()) {
+                resultHandler.handle(Future.failedFuture(ar.cause()));
+            } else {
+                computeEvaluation(WebClient.newInstance(ar.result()), shares, known, resultHandler);
+            }
+        });
     }
 
     @Override
     public void buy(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+        buyForAccount(DEFAULT_ACCOUNT, amount, quote, resultHandler);
+    }
+
+    @Override
+    public void buyForAccount(String id, int amount, JsonObject quote,
+                              Handler<AsyncResult<Portfolio>> resultHandler) {
+        buyAtMarket(id, quote.getString("name"), amount, quote,
+            ar -> resultHandler.handle(ar.map(status -> account(id).portfolio())));
+    }
+
+    @Override
+    public void buyShares(String id, String name, int amount, Handler<AsyncResult<Portfolio>> resultHandler) {
+        buyAtMarket(id, name, amount, null, ar -> resultHandler.handle(ar.map(status -> account(id).portfolio())));
+    }
+
+    /**
+     * Buys at the last quote, the result handler being called with the order status.
+     */
+    private void buyAtMarket(String id, String name, int amount, JsonObject given,
+                             Handler<AsyncResult<JsonObject>> resultHandler) {
         
         if (amount <= 0) {
             resultHandler.handle(Future.failedFuture(
-                "Cannot buy "   + quote.getString("name") 
+                "Cannot buy "   + name 
                                 + " - the amount must be greater than 0"));
             return;
         }
 
+        JsonObject quote = pricing(name, given);
+        if (quote == null) {
+            resultHandler.handle(Future.failedFuture(
+                "Cannot buy " + amount + " of " + name + " - no fresh market quote"));
+            return;
+        }
+
         if (quote.getInteger("shares") < amount) {
             resultHandler.handle(Future.failedFuture(
                 "Cannot buy " + amount + " - not enough stocks on the market (" 
@@ -99,20 +423,15 @@ public class PortfolioServiceImpl implements PortfolioService {
             return;
         }
 
-        double price = amount * quote.getDouble("ask");
-        String name = quote.getString("name");
+        Account account = account(id);
+        double ask = quote.getDouble("ask");
+        double price = amount * ask;
 
         // 1) Do we have enough money?
-        if (portfolio.getCash() >= price) {
-            
+        if (account.availableCash() >= price) {
 
-            // Yes, buy it
-            portfolio.setCash(portfolio.getCash() - price);
-            int current = portfolio.getAmount(name);
-            int newAmount = current + amount;
-            portfolio.getShares().put(name, newAmount);
-            sendActionOnTheEventBus("BUY", amount, quote, newAmount);
-            resultHandler.handle(Future.succeededFuture(portfolio));
+            // Yes, buy it: from the resting sell orders at the ask or better, then from the market
+            execute(account, name, true, amount, ask, quote, false, resultHandler);
 
         } else {
 
@@ -120,40 +439,55 @@ public class PortfolioServiceImpl implements PortfolioService {
                 "Cannot buy " + amount + " of " + name 
                         + " - not enough money, need " 
                         + price + ", has " 
-                        + portfolio.getCash()));
+                        + account.availableCash()));
         
         }
     }
 
     @Override
     public void sell(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+        sellForAccount(DEFAULT_ACCOUNT, amount, quote, resultHandler);
+    }
+
+    @Override
+    public void sellForAccount(String id, int amount, JsonObject quote,
+                               Handler<AsyncResult<Portfolio>> resultHandler) {
+        sellAtMarket(id, quote.getString("name"), amount, quote,
+            ar -> resultHandler.handle(ar.map(status -> account(id).portfolio())));
+    }
+
+    @Override
+    public void sellShares(String id, String name, int amount, Handler<AsyncResult<Portfolio>> resultHandler) {
+        sellAtMarket(id, name, amount, null, ar -> resultHandler.handle(ar.map(status -> account(id).portfolio())));
+    }
+
+    /**
+     * Sells at the last quote, the result handler being called with the order status.
+     */
+    private void sellAtMarket(String id, String name, int amount, JsonObject given,
+                              Handler<AsyncResult<JsonObject>> resultHandler) {
         if (amount <= 0) {
             resultHandler.handle(Future.failedFuture("Cannot sell" 
-                    + quote.getString("name") 
+                    + name 
                     + " - the amount must be greater than 0"));
             return;
         }
 
-        double price = amount * quote.getDouble("bid");
-
-        String name = quote.getString("name");
+        JsonObject quote = pricing(name, given);
+        if (quote == null) {
+            resultHandler.handle(Future.failedFuture(
+                "Cannot sell " + amount + " of " + name + " - no fresh market quote"));
+            return;
+        }
 
-        int current = portfolio.getAmount("name");
+        Account account = account(id);
 
         // 1) Do we have enough stocks?
-        if (current >= amount) {
-            
-            // Yes, sell it
-            int newAmount = current - amount;
-            if (newAmount == 0) {
-                portfolio.getShares().remove(name);
-            } else {
-                portfolio.getShares().put(name, newAmount);
-            }
-            portfolio.setCash(portfolio.getCash() + price);
-            sendActionOnTheEventBus("SELL", amount, quote, newAmount);
-            resultHandler.handle(Future.succeededFuture(portfolio));
-        
+        if (account.availableShares(name) >= amount) {
+
+            // Yes, sell it: to the resting buy orders at the bid or better, then to the market
+            execute(account, name, false, amount, quote.getDouble("bid"), quote, false, resultHandler);
+
         } else {
 
             resultHandler.handle(Future.failedFuture(
@@ -164,16 +498,362 @@ public class PortfolioServiceImpl implements PortfolioService {
 
     }
 
-    private void computeEvaluation(WebClient client, Handler<AsyncResult<Double>> resultHandler) {
+    @Override
+    public void buyDelta(String id, String name, int amount, Handler<AsyncResult<PortfolioDelta>> resultHandler) {
+        trackDelta(id, name, handler -> buyAtMarket(id, name, amount, null, handler), resultHandler);
+    }
+
+    @Override
+    public void sellDelta(String id, String name, int amount, Handler<AsyncResult<PortfolioDelta>> resultHandler) {
+        trackDelta(id, name, handler -> sellAtMarket(id, name, amount, null, handler), resultHandler);
+    }
+
+    /**
+     * Runs a buy or a sell, and replies with the change of the portfolio. The order is applied when it is run, while
+     * the reply is sent once durable, so the change is captured right after the run: other orders of the account may
+     * be applied before the reply.
+     */
+    private void trackDelta(String id, String name, Handler<Handler<AsyncResult<JsonObject>>> order,
+                            Handler<AsyncResult<PortfolioDelta>> resultHandler) {
+        Account account = account(id);
+        long base = account.version();
+        double cash = account.portfolio().getCash();
+        List<AsyncResult<JsonObject>> early = new ArrayList<>(1);
+        PortfolioDelta[] delta = new PortfolioDelta[1];
+        order.handle(ar -> {
+            if (delta[0] == null) {
+                // Rejected before being applied
+                early.add(ar);
+            } else {
+                resultHandler.handle(ar.map(status -> delta[0]));
+            }
+        });
+        delta[0] = new PortfolioDelta()
+            .setAccount(id)
+            .setEpoch(account.epoch())
+            .setBase(base)
+            .setSequence(account.version())
+            .setName(name)
+            .setAmount(account.portfolio().getAmount(name))
+            .setCashDelta(account.portfolio().getCash() - cash);
+        if (!early.isEmpty()) {
+            resultHandler.handle(early.get(0).map(status -> delta[0]));
+        }
+    }
+
+    @Override
+    public void syncPortfolio(String id, Handler<AsyncResult<PortfolioDelta>> resultHandler) {
+        Account account = account(id);
+        resultHandler.handle(Future.succeededFuture(new PortfolioDelta()
+            .setAccount(id)
+            .setEpoch(account.epoch())
+            .setBase(account.version())
+            .setSequence(account.version())
+            // A copy, so the delta stays at this version if not serialized
+            .setPortfolio(new Portfolio(account.portfolio()))));
+    }
+
+    /**
+     * Gets the quote pricing a buy or a sell: the last quote received from the market, or, if there is no fresh one
+     * and the {@link StaleQuotePolicy#CLIENT} policy is used, the quote given by the caller.
+     *
+     * @return the quote, {@code null} if the order cannot be priced
+     */
+    private JsonObject pricing(String name, JsonObject given) {
+        Quote last = quotes.get(name, System.currentTimeMillis());
+        if (last != null) {
+            return last.toJson();
+        }
+        if (stalePolicy == StaleQuotePolicy.CLIENT && given != null && given.getValue("ask") != null
+            && given.getValue("bid") != null && given.getValue("shares") != null) {
+            return given;
+        }
+        return null;
+    }
 
-        // We need to call the service for each company in which we own numberOfShares
-        Flowable.fromIterable(portfolio.getShares().entrySet())
-                // For each we retrieve the valule
-                .flatMapSingle(entry -> getValueForCompany(client, entry.getKey(), entry.getValue()))
+    @Override
+    public void placeOrder(String id, JsonObject order, Handler<AsyncResult<JsonObject>> resultHandler) {
+        String name = order.getString("name");
+        String action = order.getString("action", "").toUpperCase();
+        String type = order.getString("type", "LIMIT").toUpperCase();
+        int amount = order.getInteger("amount", 0);
+        if (name == null || amount <= 0 || !("BUY".equals(action) || "SELL".equals(action))) {
+            resultHandler.handle(Future.failedFuture(
+                "Invalid order - a name, a BUY or SELL action and a positive amount are required"));
+            return;
+        }
+        boolean buy = "BUY".equals(action);
+        Quote last = quotes.get(name, System.currentTimeMillis());
+        double limit;
+        if ("MARKET".equals(type)) {
+            // The market bounds the price of a market order
+            if (last == null) {
+                resultHandler.handle(Future.failedFuture("Cannot " + action + " " + name + " - no market quote"));
+                return;
+            }
+            limit = buy ? last.getAsk() : last.getBid();
+        } else if ("LIMIT".equals(type)) {
+            limit = order.getDouble("price", 0.0);
+            if (limit <= 0) {
+                resultHandler.handle(Future.failedFuture("Invalid order - a limit order requires a positive price"));
+                return;
+            }
+        } else {
+            resultHandler.handle(Future.failedFuture("Invalid order type " + type));
+            return;
+        }
+
+        Account account = account(id);
+        if (buy ? account.availableCash() < amount * limit : account.availableShares(name) < amount) {
+            resultHandler.handle(Future.failedFuture("Cannot " + action + " " + amount + " of " + name + " - not "
+                + (buy ? "enough money" : "enough stocks in portfolio")));
+            return;
+        }
+        execute(account, name, buy, amount, limit, last != null ? last.toJson() : null, "LIMIT".equals(type),
+            resultHandler);
+    }
+
+    @Override
+    public void cancelOrder(String id, String name, long orderId, Handler<AsyncResult<JsonObject>> resultHandler) {
+        Account account = accounts.get(id);
+        OrderBook book = books.get(name);
+        if (account == null || book == null || book.owner(orderId) != account) {
+            resultHandler.handle(Future.failedFuture("Unknown order " + orderId + " of " + name));
+            return;
+        }
+        boolean buy = book.isBuy(orderId);
+        double price = OrderBook.price(book.priceOf(orderId));
+        int cancelled = book.cancel(orderId);
+        release(account, name, buy, price, cancelled);
+        resultHandler.handle(Future.succeededFuture(new JsonObject()
+            .put("id", orderId)
+            .put("name", name)
+            .put("cancelled", cancelled)));
+    }
+
+    @Override
+    public void submitOrders(String id, List<JsonObject> orders,
+                             Handler<AsyncResult<List<JsonObject>>> resultHandler) {
+        if (orders.size() > MAX_BATCH_SIZE) {
+            resultHandler.handle(Future.failedFuture(
+                "Too many orders in the batch (" + orders.size() + "), at most " + MAX_BATCH_SIZE));
+            return;
+        }
+        if (orders.isEmpty()) {
+            resultHandler.handle(Future.succeededFuture(Collections.emptyList()));
+            return;
+        }
+        // The orders are all applied before returning, in order, so nothing else runs on the shard in between. The
+        // reply is sent once all the new positions are durable.
+        JsonObject[] results = new JsonObject[orders.size()];
+        int[] pending = {orders.size()};
+        for (int i = 0; i < orders.size(); i++) {
+            JsonObject order = orders.get(i);
+            int index = i;
+            submitOrder(id, order, ar -> {
+                results[index] = ar.succeeded() ? ar.result() : rejected(order, ar.cause());
+                if (--pending[0] == 0) {
+                    resultHandler.handle(Future.succeededFuture(Arrays.asList(results)));
+                }
+            });
+        }
+    }
+
+    /**
+     * Executes an order of a batch: a buy or a sell at the last quote, or an order placed in the book.
+     */
+    private void submitOrder(String id, JsonObject order, Handler<AsyncResult<JsonObject>> resultHandler) {
+        try {
+            if (order.getValue("type") != null) {
+                placeOrder(id, order, resultHandler);
+                return;
+            }
+            JsonObject quote = order.getJsonObject("quote");
+            String name = quote != null ? quote.getString("name") : order.getString("name");
+            String action = order.getString("action", "").toUpperCase();
+            int amount = order.getInteger("amount", 0);
+            if ("BUY".equals(action)) {
+                buyAtMarket(id, name, amount, quote, resultHandler);
+            } else if ("SELL".equals(action)) {
+                sellAtMarket(id, name, amount, quote, resultHandler);
+            } else {
+                resultHandler.handle(Future.failedFuture("Invalid order - a BUY or SELL action is required"));
+            }
+        } catch (RuntimeException e) {
+            // Fields of the wrong type
+            resultHandler.handle(Future.failedFuture("Invalid order - " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Releases what a resting order reserved, once cancelled.
+     */
+    private static void release(Account account, String name, boolean buy, double price, int cancelled) {
+        if (buy) {
+            account.reserveCash(-cancelled * price);
+        } else {
+            account.reserveShares(name, -cancelled);
+        }
+    }
+
+    private static JsonObject rejected(JsonObject order, Throwable cause) {
+        JsonObject quote = order.getValue("quote") instanceof JsonObject ? order.getJsonObject("quote") : order;
+        return new JsonObject()
+            .put("id", 0L)
+            .put("name", quote.getValue("name"))
+            .put("action", order.getValue("action"))
+            .put("filled", 0)
+            .put("remaining", 0)
+            .put("status", "REJECTED")
+            .put("message", cause.getMessage());
+    }
+
+    private OrderBook book(String name) {
+        OrderBook book = books.get(name);
+        if (book == null) {
+            book = new OrderBook(new OrderBook.FillListener() {
+                @Override
+                public void fill(Object maker, long makerId, int makerRemaining, Object taker, boolean takerBuys,
+                                 long price, int quantity) {
+                    onFill(name, (Account) maker, (Account) taker, takerBuys, OrderBook.price(price), quantity);
+                }
+
+                @Override
+                public void selfTrade(Object owner, long id, boolean buy, long price, int quantity) {
+                    release((Account) owner, name, buy, OrderBook.price(price), quantity);
+                }
+            });
+            books.put(name, book);
+        }
+        return book;
+    }
+
+    /**
+     * Executes an order of an account, which has been checked to be funded. The order is matched against the
+     * resting orders of the book up to the {@code limit} price, then against the market at the given quote, if any,
+     * and if its price is acceptable. The remainder rests in the book if {@code rest} is set. The result handler is
+     * called with the order status once the new position of the account is durable.
+     */
+    private void execute(Account account, String name, boolean buy, int amount, double limit, JsonObject quote,
+                         boolean rest, Handler<AsyncResult<JsonObject>> resultHandler) {
+        if (failure != null) {
+            resultHandler.handle(Future.failedFuture(failed()));
+            return;
+        }
+        long ticks = OrderBook.ticks(limit, buy);
+        OrderBook book = book(name);
+        takerEvents.clear();
+        int remaining = book.match(buy, ticks, amount, account);
+
+        if (remaining > 0 && quote != null) {
+            double price = buy ? quote.getDouble("ask") : quote.getDouble("bid");
+            if (buy ? price <= limit : price >= limit) {
+                // The market takes the remainder, buying is limited by the shares on the market
+                int quantity = buy ? Math.min(remaining, quote.getInteger("shares", remaining)) : remaining;
+                if (quantity > 0) {
+                    int newAmount = trade(account, name, buy, quantity, price, quote.getDouble("bid"));
+                    takerEvents.add(() -> sendActionOnTheEventBus(account, buy ? "BUY" : "SELL", quantity, quote,
+                        newAmount));
+                    remaining -= quantity;
+                }
+            }
+        }
+
+        int filled = amount - remaining;
+        long orderId = 0;
+        int resting = 0;
+        if (rest && remaining > 0) {
+            orderId = book.rest(buy, ticks, remaining, account);
+            resting = remaining;
+            if (buy) {
+                account.reserveCash(resting * OrderBook.price(ticks));
+            } else {
+                account.reserveShares(name, resting);
+            }
+        }
+
+        String status;
+        if (filled == amount) {
+            status = "FILLED";
+        } else if (filled > 0) {
+            status = "PARTIALLY_FILLED";
+        } else {
+            status = resting > 0 ? "NEW" : "CANCELLED";
+        }
+        JsonObject result = new JsonObject()
+            .put("id", orderId)
+            .put("name", name)
+            .put("action", buy ? "BUY" : "SELL")
+            .put("filled", filled)
+            .put("remaining", resting)
+            .put("status", status);
+
+        if (takerEvents.isEmpty()) {
+            resultHandler.handle(Future.succeededFuture(result));
+            return;
+        }
+        List<Runnable> events = new ArrayList<>(takerEvents);
+        takerEvents.clear();
+        persist(account, name, account.portfolio().getAmount(name),
+            ar -> resultHandler.handle(Future.failedFuture(ar.cause())), () -> {
+                events.forEach(Runnable::run);
+                resultHandler.handle(Future.succeededFuture(result));
+            });
+    }
+
+    /**
+     * Settles a fill of the book: the resting (maker) order of an account against the incoming (taker) order of
+     * another one, at the price of the resting order. The maker operation is sent once durable, the taker one with
+     * the other operations of its order.
+     */
+    private void onFill(String name, Account maker, Account taker, boolean takerBuys, double price, int quantity) {
+        JsonObject quote = new JsonObject().put("name", name).put("bid", price).put("ask", price);
+        // The resting order reserved what it trades
+        if (takerBuys) {
+            maker.reserveShares(name, -quantity);
+        } else {
+            maker.reserveCash(-quantity * price);
+        }
+        int makerAmount = trade(maker, name, !takerBuys, quantity, price, price);
+        // A failure stops the shard, the operation of the maker is then not sent
+        persist(maker, name, makerAmount, ar -> { },
+            () -> sendActionOnTheEventBus(maker, takerBuys ? "SELL" : "BUY", quantity, quote, makerAmount));
+
+        int takerAmount = trade(taker, name, takerBuys, quantity, price, price);
+        takerEvents.add(() -> sendActionOnTheEventBus(taker, takerBuys ? "BUY" : "SELL", quantity, quote,
+            takerAmount));
+    }
+
+    /**
+     * Applies a trade to the portfolio of an account.
+     *
+     * @return the number of shares owned after the trade
+     */
+    private int trade(Account account, String name, boolean buy, int quantity, double price, double bid) {
+        Portfolio portfolio = account.portfolio();
+        int current = portfolio.getAmount(name);
+        int newAmount = buy ? current + quantity : current - quantity;
+        portfolio.setAmount(name, newAmount);
+        account.changed();
+        portfolio.setCash(portfolio.getCash() + (buy ? -quantity * price : quantity * price));
+        revalue(account, name, current, newAmount, bid);
+        return newAmount;
+    }
+
+    private void computeEvaluation(WebClient client, Map<String, Integer> shares, double known,
+                                   Handler<AsyncResult<Double>> resultHandler) {
+
+        // We retrieve the quotes of the given companies in a single call per chunk of companies
+        List<String> companies = new ArrayList<>(shares.keySet());
+        Flowable.range(0, (companies.size() + EVALUATION_CHUNK_SIZE - 1) / EVALUATION_CHUNK_SIZE)
+                .map(chunk -> companies.subList(chunk * EVALUATION_CHUNK_SIZE,
+                    Math.min(companies.size(), (chunk + 1) * EVALUATION_CHUNK_SIZE)))
+                // For each chunk we retrieve the value of the owned shares
+                .flatMapSingle(chunk -> getValueForCompanies(client, chunk, shares))
                 // We accumulate the results until the end of the stream
                 .toList()
                 // And compute the sum
-                .map(list -> list.stream().mapToDouble(x -> x).sum())
+                .map(list -> known + list.stream().mapToDouble(x -> x).sum())
                 // We report the result or failure
                 .subscribe((sum, err) -> {
                     if (err != null) {
@@ -186,23 +866,24 @@ public class PortfolioServiceImpl implements PortfolioService {
                 });
     }
 
-    private Single<Double> getValueForCompany(WebClient client, String company, Integer numberOfShares) {
+    private Single<Double> getValueForCompanies(WebClient client, List<String> companies,
+                                                Map<String, Integer> shares) {
 
-        return client.get("/?name=" + encode(company))
+        return client.post("/")
                 .as(BodyCodec.jsonObject())
-                .rxSend()
+                .rxSendJson(new JsonArray(new ArrayList<>(companies)))
                 .map(HttpResponse::body)
-                .map(json -> json.getDouble("bid"))
-                .map(val -> val * numberOfShares);
-    }
-
-    private static String encode(String value) {
-        try {
-            return URLEncoder.encode(value, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException("Unsupported encoding");
-        }
-
+                .map(quotes -> {
+                    double sum = 0.0;
+                    for (String company : companies) {
+                        JsonObject quote = quotes.getJsonObject(company);
+                        if (quote == null) {
+                            throw new IllegalStateException("No quote available for " + company);
+                        }
+                        sum += quote.getDouble("bid") * shares.get(company);
+                    }
+                    return sum;
+                });
     }
     
     
@@ -0,0 +1,135 @@
+package io.vertx.workshop.portfolio.impl;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.AbstractVerticle;
+import io.vertx.reactivex.servicediscovery.ServiceDiscovery;
+import io.vertx.serviceproxy.ProxyHelper;
+import io.vertx.serviceproxy.ServiceBinder;
+import io.vertx.workshop.common.DiscoveryCache;
+import io.vertx.workshop.common.Metrics;
+import io.vertx.workshop.portfolio.InstrumentedPortfolioService;
+import io.vertx.workshop.portfolio.PortfolioService;
+
+import static io.vertx.workshop.portfolio.PortfolioService.ADDRESS;
+
+/**
+ * A verticle owning a shard of the accounts.
+ * <p>
+ * The accounts of the shard {@code shard} (out of {@code shards}) are managed by a {@link PortfolioServiceImpl}
+ * registered on the shard address. The verticle also registers a {@link ShardedPortfolioService} on the public
+ * service address, so the calls are spread over the event loops of the shards and routed to the owner of the
+ * account. The calls received on the public address are recorded by an {@link InstrumentedPortfolioService} and
+ * counted per action by an interceptor, in the shared metric registry.
+ * </p>
+ * <p>
+ * Unless {@code journal.enabled} is {@code false}, the accounts of the shard are persisted in a
+ * {@link PortfolioJournal} stored in {@code journal.directory}/shard-{@code shard}, and recovered when the shard
+ * starts. As a shard only journals the accounts it owns, the number of shards must not change across restarts, which
+ * the {@link PortfolioVerticle} checks.
+ * </p>
+ * <p>
+ * The buys and sells are priced with the quotes received from the market in the last {@code quote-max-age} ms. Without
+ * such a quote, they are rejected, or priced with the quote given by the caller if {@code stale-quote-policy} is
+ * {@code client}. The quotes are received once per node, by the {@link MarketDispatcher} of the
+ * {@link PortfolioVerticle}, which hands them to the shard when its accounts hold the company.
+ * </p>
+ */
+public class PortfolioShardVerticle extends AbstractVerticle {
+
+    private final MarketDispatcher market;
+
+    private ServiceDiscovery discovery;
+    private DiscoveryCache services;
+    private PortfolioServiceImpl service;
+
+    PortfolioShardVerticle(MarketDispatcher market) {
+        this.market = market;
+    }
+
+    @Override
+    public void start(Future<Void> future) {
+        JsonObject config = config();
+        int shard = config.getInteger("shard", 0);
+        int shards = config.getInteger("shards", 1);
+        ConsistentHashRing ring = new ConsistentHashRing(shards, config.getInteger("virtual-nodes", 100));
+
+        discovery = ServiceDiscovery.create(vertx);
+        services = new DiscoveryCache(vertx.getDelegate(), discovery.getDelegate(), Metrics.registry());
+
+        JsonObject journalConfig = config.getJsonObject("journal", new JsonObject());
+        if (!journalConfig.getBoolean("enabled", true)) {
+            start(shard, shards, ring, null, null);
+            future.complete();
+            return;
+        }
+
+        // Recover the accounts of the shard before serving them
+        File directory = new File(journalConfig.getString("directory", "portfolio-journal"), "shard-" + shard);
+        PortfolioJournal journal = new PortfolioJournal(vertx.getDelegate(), directory,
+            journalConfig.getInteger("segment-size", 64 * 1024 * 1024), journalConfig.getBoolean("sync", true));
+        vertx.<PortfolioJournal.Recovery>rxExecuteBlocking(promise -> {
+            long begin = System.nanoTime();
+            PortfolioJournal.Recovery recovery = PortfolioJournal.recover(directory);
+            journal.open(recovery.sequence());
+            System.out.println("Recovered " + recovery.accounts().size() + " accounts of shard " + shard + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms");
+            promise.complete(recovery);
+        })
+            .subscribe(
+                recovery -> {
+                    PortfolioServiceImpl service = start(shard, shards, ring, journal, recovery);
+                    // Keep the replayed tail short
+                    service.snapshot();
+                    vertx.setPeriodic(journalConfig.getLong("snapshot-interval", 60000L), l -> service.snapshot());
+                    future.complete();
+                },
+                future::fail,
+                () -> future.fail("Unable to recover the accounts of shard " + shard));
+    }
+
+    private PortfolioServiceImpl start(int shard, int shards, ConsistentHashRing ring, PortfolioJournal journal,
+                                       PortfolioJournal.Recovery recovery) {
+        // Create the service object
+        service = new PortfolioServiceImpl(vertx,
+            services, market.quotes(), config().getDouble("money", 10000.0), journal,
+            PortfolioServiceImpl.StaleQuotePolicy.valueOf(
+                config().getString("stale-quote-policy", "reject").toUpperCase()));
+        if (recovery != null) {
+            service.restore(recovery.accounts());
+        }
+
+        // Keep the value of the portfolios up to date
+        market.register(service, context);
+
+        // Register the shard, and the router on the public address
+        ProxyHelper.registerService(PortfolioService.class,
+                vertx.getDelegate(),
+                service,
+                ShardedPortfolioService.address(shard));
+        MetricRegistry registry = Metrics.registry();
+        new ServiceBinder(vertx.getDelegate())
+                .setAddress(ADDRESS)
+                .addInterceptor(Metrics.requestMeter(registry, "portfolio"))
+                .register(PortfolioService.class, new InstrumentedPortfolioService(
+                    new ShardedPortfolioService(vertx.getDelegate(), ring, shards, shard, service),
+                    registry, "portfolio"));
+
+        System.out.println("Portfolio shard " + shard + "/" + shards + " started");
+        return service;
+    }
+
+    @Override
+    public void stop() {
+        if (service != null) {
+            market.unregister(service);
+        }
+        services.close();
+        discovery.close();
+    }
+}
@@ -1,16 +1,42 @@
 package io.vertx.workshop.portfolio.impl;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.core.AbstractVerticle;
+import io.vertx.reactivex.core.RxHelper;
 import io.vertx.reactivex.servicediscovery.types.EventBusService;
+import io.vertx.reactivex.servicediscovery.types.MessageSource;
 import io.vertx.servicediscovery.Record;
 import io.vertx.reactivex.servicediscovery.ServiceDiscovery;
-import io.vertx.serviceproxy.ProxyHelper;
+import io.vertx.workshop.common.Metrics;
+import io.vertx.workshop.common.Quote;
+import io.vertx.workshop.common.QuoteCodec;
 import io.vertx.workshop.portfolio.PortfolioService;
 
 import static io.vertx.workshop.portfolio.PortfolioService.ADDRESS;
 
 /**
- * A verticle publishing the portfolio service.
+ * A verticle publishing the portfolio service. The HTTP server used for the health check also serves the metrics in
+ * the Prometheus format on {@code /metrics}.
+ * <p>
+ * The accounts are partitioned over {@code shards} shards (the number of cores by default), each one owned by a
+ * {@link PortfolioShardVerticle} running on its own event loop. This node deploys the shards listed in
+ * {@code owned-shards}, all of them by default, so the shards can be spread over the nodes of a cluster. The node
+ * consumes the market once, and a {@link MarketDispatcher} hands the quotes to the shards holding the company.
+ * </p>
+ * <p>
+ * As a shard only journals the accounts it owns, the number of shards is recorded in the {@code shards} file of the
+ * journal directory, and the verticle refuses to start with a different number.
+ * </p>
  */
 public class PortfolioVerticle extends AbstractVerticle {
 
@@ -18,38 +44,104 @@ public class PortfolioVerticle extends AbstractVerticle {
     private ServiceDiscovery discovery;
 
     @Override
-    public void start() {
+    public void start(Future<Void> future) {
 
 
         ServiceDiscovery.create(vertx, discovery -> {
             this.discovery = discovery;
-            // Create the service object
-            PortfolioServiceImpl service = new PortfolioServiceImpl(vertx, 
-            	discovery, config().getDouble("money", 10000.0));
-
-            // Register the service proxy on the event bus
-            ProxyHelper.registerService(PortfolioService.class, 
-                    vertx.getDelegate(),
-                    service,
-                    ADDRESS);
-			Record record = EventBusService.createRecord("portfolio", ADDRESS, PortfolioService.class.getName());
-			
-			discovery.publish(record, ar -> {
-				if (ar.succeeded()) {
-					this.record = record;
-					System.out.println("Portfolio service published");
-					
-					// Used for health check
-					vertx.createHttpServer()
-						.requestHandler(req -> req.response().end("Ok"))
-						.listen(8085);
-				} else {
-					ar.cause().printStackTrace();
-				}
-			});
-					
+
+            // Deploy the shards owned by this node
+            int shards = config().getInteger("shards", Runtime.getRuntime().availableProcessors());
+            JsonArray owned = config().getJsonArray("owned-shards");
+            if (owned == null) {
+                owned = new JsonArray();
+                for (int i = 0; i < shards; i++) {
+                    owned.add(i);
+                }
+            }
+
+            MarketDispatcher market = new MarketDispatcher(
+                new LatestQuoteCache(config().getLong("quote-max-age", 10000L)));
+            subscribeToTheMarket(discovery, market);
+
+            checkShards(shards)
+                .andThen(Flowable.fromIterable(owned))
+                .map(shard -> config().copy().put("shard", (Integer) shard).put("shards", shards))
+                .flatMapSingle(config -> vertx.rxDeployVerticle(new PortfolioShardVerticle(market),
+                    new DeploymentOptions().setConfig(config)))
+                .ignoreElements()
+                .subscribe(() -> {
+                    publish(discovery);
+                    future.complete();
+                }, future::fail);
         });
 
+    }
+
+    private void subscribeToTheMarket(ServiceDiscovery discovery, MarketDispatcher market) {
+        QuoteCodec.register(vertx.getDelegate());
+        MessageSource.<Quote>rxGetConsumer(discovery, record -> record.getName().equals("market-data"))
+            // The market data may not be published yet, retry until they are
+            .retryWhen(errors -> errors.flatMap(err -> Flowable.timer(5, TimeUnit.SECONDS, RxHelper.scheduler(vertx))))
+            .subscribe(
+                consumer -> consumer.handler(message -> market.dispatch(message.body())),
+                err -> System.err.println("Unable to subscribe to the market data: " + err));
+    }
+
+    /**
+     * Checks the number of shards against the one recorded in the journal directory, recording it the first time.
+     */
+    private Completable checkShards(int shards) {
+        JsonObject journal = config().getJsonObject("journal", new JsonObject());
+        if (!journal.getBoolean("enabled", true)) {
+            return Completable.complete();
+        }
+        File file = new File(journal.getString("directory", "portfolio-journal"), "shards");
+        return vertx.<Void>rxExecuteBlocking(promise -> {
+            try {
+                if (file.exists()) {
+                    int journaled = Integer.parseInt(
+                        new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+                    if (journaled != shards) {
+                        promise.fail(new IllegalStateException("The journal holds " + journaled + " shards, but "
+                            + shards + " are configured: set shards to " + journaled));
+                        return;
+                    }
+                } else {
+                    Files.createDirectories(file.getParentFile().toPath());
+                    Files.write(file.toPath(), Integer.toString(shards).getBytes(StandardCharsets.UTF_8));
+                }
+                promise.complete();
+            } catch (Exception e) {
+                promise.fail(e);
+            }
+        }).ignoreElement();
+    }
+
+    private void publish(ServiceDiscovery discovery) {
+		Record record = EventBusService.createRecord("portfolio", ADDRESS, PortfolioService.class.getName());
+		
+		discovery.publish(record, ar -> {
+			if (ar.succeeded()) {
+				this.record = record;
+				System.out.println("Portfolio service published");
+				
+				// Used for health check
+				vertx.createHttpServer()
+					.requestHandler(req -> {
+						if ("/metrics".equals(req.path())) {
+							req.response()
+								.putHeader("content-type", Metrics.PROMETHEUS_CONTENT_TYPE)
+								.end(Metrics.scrape(Metrics.registry()));
+						} else {
+							req.response().end("Ok");
+						}
+					})
+					.listen(config().getInteger("http.port", 8085));
+			} else {
+				ar.cause().printStackTrace();
+			}
+		});
     }
 	
 	@Override
@@ -0,0 +1,146 @@
+package io.vertx.workshop.portfolio.impl;
+
+import java.util.List;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.serviceproxy.ServiceProxyBuilder;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.PortfolioDelta;
+import io.vertx.workshop.portfolio.PortfolioService;
+
+/**
+ * The portfolio service registered on {@link PortfolioService#ADDRESS}, routing each call to the shard owning the
+ * account.
+ * <p>
+ * The accounts are assigned to the shards using a {@link ConsistentHashRing}. Calls for the accounts of the local
+ * shard, running on the same event loop, are handled directly, the others are forwarded to the shard address using
+ * a service proxy. The shards may be deployed on other nodes of the cluster.
+ * </p>
+ */
+public class ShardedPortfolioService implements PortfolioService {
+
+    private final ConsistentHashRing ring;
+    private final PortfolioService[] shards;
+
+    /**
+     * Creates a new {@link ShardedPortfolioService}.
+     *
+     * @param vertx      the vert.x instance
+     * @param ring       the assignment of the accounts to the shards
+     * @param shardCount the number of shards
+     * @param localShard the index of the shard running on the current event loop
+     * @param local      the service of the local shard
+     */
+    public ShardedPortfolioService(Vertx vertx, ConsistentHashRing ring, int shardCount, int localShard,
+                                   PortfolioService local) {
+        this.ring = ring;
+        this.shards = new PortfolioService[shardCount];
+        ServiceProxyBuilder builder = new ServiceProxyBuilder(vertx);
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = i == localShard ? local : builder.setAddress(address(i)).build(PortfolioService.class);
+        }
+    }
+
+    /**
+     * Gets the event bus address of a shard.
+     *
+     * @param shard the shard
+     * @return the address
+     */
+    public static String address(int shard) {
+        return ADDRESS + ".shard." + shard;
+    }
+
+    private PortfolioService shard(String account) {
+        return shards[ring.shard(account)];
+    }
+
+    @Override
+    public void getPortfolio(Handler<AsyncResult<Portfolio>> resultHandler) {
+        getAccountPortfolio(DEFAULT_ACCOUNT, resultHandler);
+    }
+
+    @Override
+    public void buy(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+        buyForAccount(DEFAULT_ACCOUNT, amount, quote, resultHandler);
+    }
+
+    @Override
+    public void sell(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+        sellForAccount(DEFAULT_ACCOUNT, amount, quote, resultHandler);
+    }
+
+    @Override
+    public void evaluate(Handler<AsyncResult<Double>> resultHandler) {
+        evaluateAccount(DEFAULT_ACCOUNT, resultHandler);
+    }
+
+    @Override
+    public void getAccountPortfolio(String account, Handler<AsyncResult<Portfolio>> resultHandler) {
+        shard(account).getAccountPortfolio(account, resultHandler);
+    }
+
+    @Override
+    public void buyForAccount(String account, int amount, JsonObject quote,
+                              Handler<AsyncResult<Portfolio>> resultHandler) {
+        shard(account).buyForAccount(account, amount, quote, resultHandler);
+    }
+
+    @Override
+    public void sellForAccount(String account, int amount, JsonObject quote,
+                               Handler<AsyncResult<Portfolio>> resultHandler) {
+        shard(account).sellForAccount(account, amount, quote, resultHandler);
+    }
+
+    @Override
+    public void buyShares(String account, String name, int amount, Handler<AsyncResult<Portfolio>> resultHandler) {
+        shard(account).buyShares(account, name, amount, resultHandler);
+    }
+
+    @Override
+    public void sellShares(String account, String name, int amount, Handler<AsyncResult<Portfolio>> resultHandler) {
+        shard(account).sellShares(account, name, amount, resultHandler);
+    }
+
+    @Override
+    public void buyDelta(String account, String name, int amount, Handler<AsyncResult<PortfolioDelta>> resultHandler) {
+        shard(account).buyDelta(account, name, amount, resultHandler);
+    }
+
+    @Override
+    public void sellDelta(String account, String name, int amount,
+                          Handler<AsyncResult<PortfolioDelta>> resultHandler) {
+        shard(account).sellDelta(account, name, amount, resultHandler);
+    }
+
+    @Override
+    public void syncPortfolio(String account, Handler<AsyncResult<PortfolioDelta>> resultHandler) {
+        shard(account).syncPortfolio(account, resultHandler);
+    }
+
+    @Override
+    public void evaluateAccount(String account, Handler<AsyncResult<Double>> resultHandler) {
+        shard(account).evaluateAccount(account, resultHandler);
+    }
+
+    @Override
+    public void placeOrder(String account, JsonObject order, Handler<AsyncResult<JsonObject>> resultHandler) {
+        shard(account).placeOrder(account, order, resultHandler);
+    }
+
+    @Override
+    public void cancelOrder(String account, String name, long orderId,
+                            Handler<AsyncResult<JsonObject>> resultHandler) {
+        shard(account).cancelOrder(account, name, orderId, resultHandler);
+    }
+
+    @Override
+    public void submitOrders(String account, List<JsonObject> orders,
+                             Handler<AsyncResult<List<JsonObject>>> resultHandler) {
+        // The whole batch goes to the shard owning the account, in a single message
+        shard(account).submitOrders(account, orders, resultHandler);
+    }
+}
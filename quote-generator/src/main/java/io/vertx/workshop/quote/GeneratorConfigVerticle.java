@@ -1,10 +1,15 @@
 package io.vertx.workshop.quote;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.CompletableHelper;
 import io.vertx.reactivex.config.ConfigRetriever;
@@ -12,15 +17,26 @@ import io.vertx.reactivex.core.AbstractVerticle;
 import io.vertx.reactivex.servicediscovery.ServiceDiscovery;
 import io.vertx.reactivex.servicediscovery.types.MessageSource;
 import io.vertx.servicediscovery.Record;
+import io.vertx.workshop.common.Instrument;
+import io.vertx.workshop.common.MarketSubscription;
+import io.vertx.workshop.common.Quote;
+import io.vertx.workshop.common.QuoteBatchCodec;
+import io.vertx.workshop.common.QuoteCodec;
 
 public class GeneratorConfigVerticle extends AbstractVerticle {
 
     /**
      * The address on which the data are sent
      */
-    static final String ADDRESS = "market";
+    static final String ADDRESS = MarketSubscription.ADDRESS;
+
+    /**
+     * The address on which the data are sent by batches
+     */
+    static final String BATCH_ADDRESS = "market.batch";
 
     private Record record;
+    private JsonObject marketConfig;
     private ServiceDiscovery discovery;
 
     /**
@@ -29,23 +45,20 @@ public class GeneratorConfigVerticle extends AbstractVerticle {
     @Override
     public void start(Future<Void> future) {
 
+        // Quotes are sent using a binary codec, and decoded only by the consumers
+        QuoteCodec.register(vertx.getDelegate());
+        QuoteBatchCodec.register(vertx.getDelegate());
+
         discovery = ServiceDiscovery.create(vertx);
         ConfigRetriever retriever = ConfigRetriever.create(vertx, getConfigurationOptions());
 
         retriever.rxGetConfig()
-            // Read the configuration, and deploy a MarketDataVerticle for each company listed in the configuration.
-            .flatMap(config -> 
-                Observable.fromIterable(config.getJsonArray("companies"))
-                    .cast(JsonObject.class)
-                    // Deploy the verticle with a configuration
-                    .flatMapSingle(company -> vertx.rxDeployVerticle(MarketDataVerticle.class.getName(),
-                        new DeploymentOptions().setConfig(company)))
-                    .toList()
-            )
+            // Read the configuration, and deploy the market simulation
+            .flatMap(this::deployMarket)
             // Deploy another verticle
             .flatMap(l -> vertx.rxDeployVerticle(RestQuoteAPIVerticle.class.getName()))
-            // Expose the market-data message source
-            .flatMap(x -> discovery.rxPublish(MessageSource.createRecord("market-data", ADDRESS)))
+            // Expose the market-data message source, listing the per-symbol addresses
+            .flatMap(x -> discovery.rxPublish(createRecord()))
             .subscribe((rec, err) -> {
                 if (rec != null) {
                     this.record = rec;
@@ -66,10 +79,74 @@ public class GeneratorConfigVerticle extends AbstractVerticle {
         }
     }
 
+    private Record createRecord() {
+        if (!marketConfig.getBoolean("publish-symbols", true)) {
+            return MessageSource.createRecord("market-data", ADDRESS);
+        }
+        return MessageSource.createRecord("market-data", ADDRESS, Quote.class.getName(),
+            MarketSubscription.metadata(instruments(marketConfig)));
+    }
+
+    /**
+     * Lists the instruments of the market described by the given configuration, as simulated by the
+     * {@link MarketSimulatorVerticle} or the {@link MarketDataVerticle}s.
+     */
+    static List<Instrument> instruments(JsonObject config) {
+        List<Instrument> instruments = new ArrayList<>();
+        JsonArray companies = config.getJsonArray("companies", new JsonArray());
+        for (int i = 0; i < companies.size(); i++) {
+            JsonObject company = companies.getJsonObject(i);
+            instruments.add(Instrument.intern(company.getString("name"), company.getString("symbol")));
+        }
+        if (!"per-company".equals(config.getString("simulator"))) {
+            JsonObject generated = config.getJsonObject("generated-companies", new JsonObject());
+            for (int i = 0; i < generated.getInteger("count", 0); i++) {
+                JsonObject company = MarketSimulatorVerticle.generate(generated, i);
+                instruments.add(Instrument.intern(company.getString("name"), company.getString("symbol")));
+            }
+        }
+        return instruments;
+    }
+
+    private Single<List<String>> deployMarket(JsonObject config) {
+        this.marketConfig = config;
+        if ("per-company".equals(config.getString("simulator"))) {
+            // Deploy a MarketDataVerticle for each company listed in the configuration.
+            return Observable.fromIterable(config.getJsonArray("companies"))
+                .cast(JsonObject.class)
+                // Deploy the verticle with a configuration, publishing as configured for the market
+                .flatMapSingle(company -> vertx.rxDeployVerticle(MarketDataVerticle.class.getName(),
+                    new DeploymentOptions().setConfig(new JsonObject()
+                        .put("publish-quotes", config.getBoolean("publish-quotes", true))
+                        .put("publish-symbols", config.getBoolean("publish-symbols", true))
+                        .mergeIn(company))))
+                .toList();
+        }
+
+        // Deploy a MarketSimulatorVerticle per partition, each of them gets its own event loop
+        int companies = config.getJsonArray("companies").size()
+            + config.getJsonObject("generated-companies", new JsonObject()).getInteger("count", 0);
+        int partitions = config.getInteger("partitions",
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), companies)));
+        return Observable.range(0, partitions)
+            .flatMapSingle(partition -> vertx.rxDeployVerticle(MarketSimulatorVerticle.class.getName(),
+                new DeploymentOptions().setConfig(config.copy()
+                    .put("partition", partition)
+                    .put("partitions", partitions))))
+            .toList();
+    }
+
+    /**
+     * The deployment configuration, overridden by the file located at {@code CONTAINER_PATH} when set.
+     */
     private ConfigRetrieverOptions getConfigurationOptions() {
-        JsonObject path = new JsonObject().put("path", System.getenv("CONTAINER_PATH"));
-        return new ConfigRetrieverOptions()
-            .addStore(new ConfigStoreOptions().setType("file").setConfig(path));
+        ConfigRetrieverOptions options = new ConfigRetrieverOptions()
+            .addStore(new ConfigStoreOptions().setType("json").setConfig(config()));
+        String path = System.getenv("CONTAINER_PATH");
+        if (path != null) {
+            options.addStore(new ConfigStoreOptions().setType("file").setConfig(new JsonObject().put("path", path)));
+        }
+        return options;
 
     }
 
@@ -5,11 +5,19 @@ import java.util.Random;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.common.Instrument;
+import io.vertx.workshop.common.Quote;
+import io.vertx.workshop.common.QuoteBatch;
 
 /**
  * A verticle simulating the evaluation of a company evaluation in a very unrealistic and irrational way.
- * It emits the new data on the `market` address on the event bus.
- * 
+ * It emits the new data on the `market.batch` address and, as the {@link MarketSimulatorVerticle}, on the `market`
+ * address when {@code publish-quotes} is enabled (the default) and on the `market.symbol.&lt;symbol&gt;` address when
+ * {@code publish-symbols} is enabled (the default).
+ * <p>
+ * This verticle simulates a single company and is only deployed when the {@code simulator} configuration is set to
+ * {@code per-company}. By default, the companies are simulated by the {@link MarketSimulatorVerticle}.
+ * </p>
  */
 public class MarketDataVerticle extends AbstractVerticle {
 
@@ -26,6 +34,10 @@ public class MarketDataVerticle extends AbstractVerticle {
     int share;
     private double value;
 
+    private Instrument instrument;
+    private boolean publishQuotes;
+    private boolean publishSymbols;
+
     private final Random random = new Random();
 
     /**
@@ -60,6 +72,10 @@ public class MarketDataVerticle extends AbstractVerticle {
 
         share = stocks / 2;
 
+        instrument = Instrument.intern(name, symbol);
+        publishQuotes = config.getBoolean("publish-quotes", true);
+        publishSymbols = config.getBoolean("publish-symbols", true);
+
         System.out.println("Initialized " + name);
 
     }
@@ -68,7 +84,14 @@ public class MarketDataVerticle extends AbstractVerticle {
      * Sends the market data on the event bus
      */
     private void send() {
-        vertx.eventBus().publish(GeneratorConfigVerticle.ADDRESS, toJson());
+        Quote quote = toQuote();
+        if (publishQuotes) {
+            vertx.eventBus().publish(GeneratorConfigVerticle.ADDRESS, quote);
+        }
+        if (publishSymbols) {
+            vertx.eventBus().publish(instrument.address(), quote);
+        }
+        vertx.eventBus().publish(GeneratorConfigVerticle.BATCH_ADDRESS, new QuoteBatch(new Quote[] {quote}, 1));
     }
 
     /**
@@ -108,16 +131,11 @@ public class MarketDataVerticle extends AbstractVerticle {
         }
     }
 
-    private JsonObject toJson() {
-        return new JsonObject()
-            .put("exchange", "Vert.x stock exchange")
-            .put("symbol", symbol)
-            .put("name", name)
-            .put("bid", bid)
-            .put("ask", ask)
-            .put("volume", stocks)
-            .put("open", price)
-            .put("shares", share);
+    /**
+     * Creates the quote sent on the event bus. The Json representation is only built by the consumers needing it.
+     */
+    Quote toQuote() {
+        return new Quote(instrument, bid, ask, stocks, price, share, System.currentTimeMillis());
     }
 
 
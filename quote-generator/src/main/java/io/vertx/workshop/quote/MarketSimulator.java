@@ -0,0 +1,142 @@
+package io.vertx.workshop.quote;
+
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.common.Instrument;
+import io.vertx.workshop.common.Quote;
+
+/**
+ * Simulates the evaluation of many companies, using the same (irrational) model as the {@link MarketDataVerticle}.
+ * <p>
+ * The state of the instruments is kept in primitive arrays (one array per attribute) so a simulation step is a
+ * linear scan over memory. Companies with a period longer than the simulator period are only updated every
+ * {@code period / simulator period} steps. A simulator is not thread safe, it is meant to be owned by a single
+ * event loop.
+ * </p>
+ */
+public class MarketSimulator {
+
+    private final Instrument[] instruments;
+    private final int[] variation;
+    private final int[] stocks;
+    private final double[] price;
+    private final int[] every;
+
+    private final double[] value;
+    private final double[] bid;
+    private final double[] ask;
+    private final int[] share;
+    private final int[] countdown;
+
+    private final SplittableRandom random;
+    private int size;
+
+    /**
+     * Creates a new {@link MarketSimulator}.
+     *
+     * @param capacity the maximum number of companies
+     * @param seed     the seed of the random generator
+     */
+    public MarketSimulator(int capacity, long seed) {
+        instruments = new Instrument[capacity];
+        variation = new int[capacity];
+        stocks = new int[capacity];
+        price = new double[capacity];
+        every = new int[capacity];
+        value = new double[capacity];
+        bid = new double[capacity];
+        ask = new double[capacity];
+        share = new int[capacity];
+        countdown = new int[capacity];
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Adds a company to the simulation.
+     *
+     * @param config the company configuration (name, symbol, volume, price, variation and period)
+     * @param period the simulator period, used to compute how often the company is updated
+     */
+    public void add(JsonObject config, long period) {
+        String name = Objects.requireNonNull(config.getString("name"));
+        int i = size++;
+        instruments[i] = Instrument.intern(name, config.getString("symbol", name));
+        variation[i] = Math.max(2, config.getInteger("variation", 100));
+        stocks[i] = config.getInteger("volume", 10000);
+        price[i] = config.getDouble("price", 100.0);
+        every[i] = (int) Math.max(1, config.getLong("period", period) / period);
+        countdown[i] = every[i];
+
+        value[i] = price[i];
+        ask[i] = price[i] + random.nextInt(variation[i] / 2);
+        bid[i] = price[i] + random.nextInt(variation[i] / 2);
+        share[i] = stocks[i] / 2;
+    }
+
+    /**
+     * @return the number of simulated companies
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Advances the simulation by one step.
+     *
+     * @param updated receives the index of the companies updated during this step
+     * @return the number of updated companies
+     */
+    public int step(int[] updated) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (--countdown[i] > 0) {
+                continue;
+            }
+            countdown[i] = every[i];
+            compute(i);
+            updated[count++] = i;
+        }
+        return count;
+    }
+
+    /**
+     * Creates the quote of the given company, from its current state.
+     *
+     * @param i   the index of the company
+     * @param now the current time
+     * @return the quote
+     */
+    public Quote quote(int i, long now) {
+        return new Quote(instruments[i], bid[i], ask[i], stocks[i], price[i], share[i], now);
+    }
+
+    private void compute(int i) {
+        int variation = this.variation[i];
+        double value = this.value[i];
+        double ask;
+        double bid;
+        if (random.nextBoolean()) {
+            value = value + random.nextInt(variation);
+            ask = value + random.nextInt(variation / 2);
+            bid = value + random.nextInt(variation / 2);
+        } else {
+            value = value - random.nextInt(variation);
+            ask = value - random.nextInt(variation / 2);
+            bid = value - random.nextInt(variation / 2);
+        }
+
+        this.value[i] = value <= 0 ? 1.0 : value;
+        this.ask[i] = ask <= 0 ? 1.0 : ask;
+        this.bid[i] = bid <= 0 ? 1.0 : bid;
+
+        if (random.nextBoolean()) {
+            // Adjust share
+            int shareVariation = random.nextInt(100);
+            if (shareVariation > 0 && share[i] + shareVariation < stocks[i]) {
+                share[i] += shareVariation;
+            }
+        }
+    }
+}
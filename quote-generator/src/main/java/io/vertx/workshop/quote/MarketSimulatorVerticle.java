@@ -0,0 +1,94 @@
+package io.vertx.workshop.quote;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.common.Quote;
+import io.vertx.workshop.common.QuoteBatch;
+
+/**
+ * A verticle simulating a partition of the market with a single timer.
+ * <p>
+ * The companies listed in {@code companies}, plus the {@code generated-companies.count} synthetic ones, are spread
+ * over {@code partitions} verticle instances: this instance simulates the companies whose index modulo
+ * {@code partitions} equals {@code partition}. Every {@code period} ms, all the companies of the partition are
+ * updated and their quotes are published on the `market.batch` address by batches of {@code batch-size}. When
+ * {@code publish-quotes} is enabled (the default), each quote is also published on the `market` address, and when
+ * {@code publish-symbols} is enabled (the default) on the `market.symbol.&lt;symbol&gt;` address of its company.
+ * </p>
+ */
+public class MarketSimulatorVerticle extends AbstractVerticle {
+
+    private MarketSimulator simulator;
+    private int[] updated;
+    private int batchSize;
+    private boolean publishQuotes;
+    private boolean publishSymbols;
+
+    @Override
+    public void start() {
+        JsonObject config = config();
+        int partition = config.getInteger("partition", 0);
+        int partitions = config.getInteger("partitions", 1);
+        long period = config.getLong("period", 3000L);
+        batchSize = config.getInteger("batch-size", 500);
+        publishQuotes = config.getBoolean("publish-quotes", true);
+        publishSymbols = config.getBoolean("publish-symbols", true);
+
+        JsonArray companies = config.getJsonArray("companies", new JsonArray());
+        JsonObject generated = config.getJsonObject("generated-companies", new JsonObject());
+        int total = companies.size() + generated.getInteger("count", 0);
+
+        simulator = new MarketSimulator((total + partitions - 1) / partitions, System.nanoTime() + partition);
+        for (int i = partition; i < total; i += partitions) {
+            if (i < companies.size()) {
+                simulator.add(companies.getJsonObject(i), period);
+            } else {
+                simulator.add(generate(generated, i - companies.size()), period);
+            }
+        }
+        updated = new int[simulator.size()];
+
+        System.out.println("Initialized market partition " + partition + "/" + partitions
+            + " with " + simulator.size() + " companies");
+
+        // Every `period` ms, the whole partition is updated
+        vertx.setPeriodic(period, l -> step());
+    }
+
+    static JsonObject generate(JsonObject generated, int index) {
+        return new JsonObject()
+            .put("name", generated.getString("name-prefix", "Company-") + index)
+            .put("symbol", generated.getString("symbol-prefix", "C") + index)
+            .put("volume", generated.getInteger("volume", 10000))
+            .put("price", generated.getDouble("price", 100.0))
+            .put("variation", generated.getInteger("variation", 50));
+    }
+
+    /**
+     * Computes a simulation step and publishes the resulting quotes.
+     */
+    private void step() {
+        int count = simulator.step(updated);
+        long now = System.currentTimeMillis();
+        EventBus eventBus = vertx.eventBus();
+        Quote[] batch = new Quote[Math.min(batchSize, count)];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            Quote quote = simulator.quote(updated[i], now);
+            if (publishQuotes) {
+                eventBus.publish(GeneratorConfigVerticle.ADDRESS, quote);
+            }
+            if (publishSymbols) {
+                eventBus.publish(quote.getInstrument().address(), quote);
+            }
+            batch[size++] = quote;
+            if (size == batch.length) {
+                eventBus.publish(GeneratorConfigVerticle.BATCH_ADDRESS, new QuoteBatch(batch, size));
+                batch = new Quote[Math.min(batchSize, count - i - 1)];
+                size = 0;
+            }
+        }
+    }
+}
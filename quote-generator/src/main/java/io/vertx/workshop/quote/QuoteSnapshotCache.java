@@ -0,0 +1,165 @@
+package io.vertx.workshop.quote;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.workshop.common.Quote;
+
+/**
+ * Keeps the last quote of each company together with its compact Json encoding, and the encoding of the whole market
+ * (name -&gt; quote).
+ * <p>
+ * Every update bumps a version. A quote is encoded at most once per update, when first requested, and the market
+ * snapshot is only rebuilt when requested after a change, by concatenating the per company buffers. Versions are
+ * prefixed by a random epoch so the entity tags change when the generator restarts.
+ * </p>
+ * This class is not thread safe, it is meant to be used from a single event loop.
+ */
+public class QuoteSnapshotCache {
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private long version;
+    private long snapshotVersion = -1;
+    private Buffer snapshot;
+    private long gzipVersion = -1;
+    private Buffer gzip;
+
+    /**
+     * The last quote of a company.
+     */
+    public final class Entry {
+        private final Buffer key;
+        private Quote quote;
+        private long version;
+        private Buffer encoded;
+
+        private Entry(String name) {
+            this.key = Buffer.buffer(Json.encode(name)).appendByte((byte) ':');
+        }
+
+        /**
+         * @return the compact Json encoding of the quote
+         */
+        public Buffer encoded() {
+            if (encoded == null) {
+                encoded = quote.toJson().toBuffer();
+            }
+            return encoded;
+        }
+
+        /**
+         * @return the entity tag of the current quote
+         */
+        public String etag() {
+            return '"' + epoch + '-' + version + '"';
+        }
+    }
+
+    /**
+     * Records a new quote.
+     *
+     * @param quote the quote
+     */
+    public void update(Quote quote) {
+        Entry entry = entries.get(quote.getName());
+        if (entry == null) {
+            entry = new Entry(quote.getName());
+            entries.put(quote.getName(), entry);
+        }
+        entry.quote = quote;
+        entry.encoded = null;
+        entry.version = ++version;
+    }
+
+    /**
+     * Gets the last quote of the given company.
+     *
+     * @param name the name of the company
+     * @return the entry, {@code null} if the company is unknown
+     */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return the entity tag of the current market snapshot
+     */
+    public String etag() {
+        return '"' + epoch + '-' + version + '"';
+    }
+
+    /**
+     * @return the Json encoding of the whole market, rebuilt if the market changed since the last call
+     */
+    public Buffer snapshot() {
+        if (snapshotVersion != version) {
+            int length = 2;
+            for (Entry entry : entries.values()) {
+                length += entry.key.length() + entry.encoded().length() + 1;
+            }
+            Buffer buffer = Buffer.buffer(length).appendByte((byte) '{');
+            boolean first = true;
+            for (Entry entry : entries.values()) {
+                if (!first) {
+                    buffer.appendByte((byte) ',');
+                }
+                first = false;
+                buffer.appendBuffer(entry.key).appendBuffer(entry.encoded());
+            }
+            snapshot = buffer.appendByte((byte) '}');
+            snapshotVersion = version;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Encodes the last quote of the given companies as a Json object (name -&gt; quote). Unknown companies are
+     * omitted.
+     *
+     * @param names the name of the companies
+     * @return the encoded Json object
+     */
+    public Buffer select(Iterable<String> names) {
+        Buffer buffer = Buffer.buffer().appendByte((byte) '{');
+        boolean first = true;
+        for (String name : names) {
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                continue;
+            }
+            if (!first) {
+                buffer.appendByte((byte) ',');
+            }
+            first = false;
+            buffer.appendBuffer(entry.key).appendBuffer(entry.encoded());
+        }
+        return buffer.appendByte((byte) '}');
+    }
+
+    /**
+     * @return the gzip compressed {@link #snapshot()}, recompressed if the market changed since the last call
+     */
+    public Buffer gzipSnapshot() {
+        if (gzipVersion != version) {
+            Buffer plain = snapshot();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length() / 4);
+            try (GZIPOutputStream zip = new GZIPOutputStream(out)) {
+                zip.write(plain.getBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            gzip = Buffer.buffer(out.toByteArray());
+            gzipVersion = version;
+        }
+        return gzip;
+    }
+}
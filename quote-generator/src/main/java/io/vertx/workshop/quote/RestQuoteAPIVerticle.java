@@ -1,85 +1,155 @@
 package io.vertx.workshop.quote;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import io.vertx.core.Future;
-import io.vertx.core.json.Json;
-import io.vertx.core.json.JsonObject;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
 import io.vertx.reactivex.CompletableHelper;
 import io.vertx.reactivex.core.AbstractVerticle;
 import io.vertx.reactivex.core.eventbus.Message;
 import io.vertx.reactivex.core.http.HttpServer;
+import io.vertx.reactivex.core.http.HttpServerRequest;
 import io.vertx.reactivex.core.http.HttpServerResponse;
-
-import java.util.HashMap;
-import java.util.Map;
+import io.vertx.workshop.common.Metrics;
+import io.vertx.workshop.common.Quote;
+import io.vertx.workshop.common.QuoteBatch;
 
 /**
  * This verticle exposes a HTTP endpoint to retrieve the current / last values of the market data (quotes)
+ * <p>
+ * The responses are served from a {@link QuoteSnapshotCache}: quotes are only re-encoded when they change, and the
+ * responses carry an entity tag so polling clients get a {@code 304 Not Modified} when nothing changed. When
+ * {@code http.gzip} is enabled, the whole market is also served gzip compressed to the clients accepting it, with
+ * its own entity tag and a {@code Vary: Accept-Encoding} header.
+ * </p>
+ * <p>
+ * Several quotes can be retrieved at once using {@code GET /?names=a,b,c} or by posting a Json array of names. The
+ * response is a Json object (name -&gt; quote) containing the known companies.
+ * </p>
+ * <p>
+ * The metrics of the generator are served in the Prometheus format on {@code /metrics}.
+ * </p>
  */
 public class RestQuoteAPIVerticle extends AbstractVerticle {
 
-    private Map<String, JsonObject> quotes = new HashMap<>();
-    
+    private final QuoteSnapshotCache quotes = new QuoteSnapshotCache();
+    private boolean gzip;
+
     @Override
     public void start(Future<Void> startFuture) throws Exception {
-        
-        // Get (consume) the stream of messages sent on the "market" address.
-        vertx.eventBus().<JsonObject>consumer(GeneratorConfigVerticle.ADDRESS).toFlowable()
-        // TODO: Extract the body of the message using `.map(msg -> {})`
-        //-----
 
-            .map(Message::body)
-        //-----
-        // TODO: For each message, populate the `quotes` map with the received quote. Use  
-        // `.doOnNext(json -> {})
-        // Quotes are json objects you can retrieve from the message body
-        // The map is structured as follows: name -> quote
-        // -----
+        gzip = config().getBoolean("http.gzip", false);
 
-
-            .doOnNext(json -> {
-                quotes.put(json.getString("name"), json);
+        // Get (consume) the stream of batches sent on the "market.batch" address.
+        vertx.eventBus().<QuoteBatch>consumer(GeneratorConfigVerticle.BATCH_ADDRESS).toFlowable()
+            .map(Message::body)
+            // Record each quote, the encoded quotes are invalidated
+            .doOnNext(batch -> {
+                for (Quote quote : batch) {
+                    quotes.update(quote);
+                }
             })
-
-        //-----
         .subscribe();
 
         HttpServer server = vertx.createHttpServer();
         server.requestStream().toFlowable()
-                .doOnNext(request -> {
-                    HttpServerResponse response = request.response()          // 1. Get the response object from the request
-                            .putHeader("content-type", "application/json");
-
-
-                    // TODO: Handle the Http request
-                    // The request handler returns a specific quote if the `name` parameter is set, or the whole map if none.
-                    // To write the response use: `response.end(content)`
-                    // If the name is set but not found you should return 404 (use response.setStatusCode(404)).
-                    // To encode a Json object, use the `encodePrettily` method.
-                    // -----
-
-                        
-                    String company = request.getParam("name");                 // 2. Gets the name parameter (query parameter) 
-
-                    if (company == null) {
-                        String content = Json.encodePrettily(quotes);          // 3. Encode the map to JSON
-                        response.end(content);                                 // 4. Write the response and flush it using end(...)
-                    } else {
-                        JsonObject quote = quotes.get(company);
-                        if (quote == null) {
-                            response.setStatusCode(404).end();                  // 5. If the given named does not match a company, set the status code to 404
-                        } else {
-                            response.end(quote.encodePrettily());
-                        }
-                    }
-                    
-                })
-
-        .subscribe();                                                           // 6. Notice the subscribe here. Without it, we would not get the requests
+                .doOnNext(this::handle)
+        .subscribe();                                                           // Notice the subscribe here. Without it, we would not get the requests
 
         server.rxListen(config().getInteger("http.port", 8080))
                 .toCompletable()
                 .subscribe(CompletableHelper.toObserver(startFuture));
+    }
+
+    /**
+     * Returns a specific quote if the `name` parameter is set, a set of quotes if the `names` parameter is set or
+     * the request is a POST, or the whole market if none. If the name is set but not found, a 404 response is
+     * returned.
+     */
+    private void handle(HttpServerRequest request) {
+        if ("/metrics".equals(request.path())) {
+            request.response()
+                .putHeader("content-type", Metrics.PROMETHEUS_CONTENT_TYPE)
+                .end(Metrics.scrape(Metrics.registry()));
+            return;
+        }
+
+        HttpServerResponse response = request.response()
+                .putHeader("content-type", "application/json");
+
+        if (request.method() == HttpMethod.POST) {
+            request.bodyHandler(body -> {
+                List<String> names;
+                try {
+                    names = new JsonArray(body.toString()).stream()
+                        .map(String::valueOf)
+                        .collect(Collectors.toList());
+                } catch (DecodeException e) {
+                    response.setStatusCode(400).end();
+                    return;
+                }
+                response.end(toRx(quotes.select(names)));
+            });
+            return;
+        }
+
+        String names = request.getParam("names");
+        if (names != null) {
+            response.end(toRx(quotes.select(Arrays.asList(names.split(",")))));
+            return;
+        }
+
+        String company = request.getParam("name");
+        if (company == null) {
+            String encodings = request.getHeader("accept-encoding");
+            boolean compressed = gzip && encodings != null && encodings.contains("gzip");
+            if (gzip) {
+                // The representation depends on the accepted encodings, caches must not mix them
+                response.putHeader("vary", "accept-encoding");
+            }
+            // Each representation has its own entity tag
+            String etag = compressed ? gzipEtag(quotes.etag()) : quotes.etag();
+            if (notModified(request, response, etag)) {
+                return;
+            }
+            if (compressed) {
+                response.putHeader("content-encoding", "gzip").end(toRx(quotes.gzipSnapshot()));
+            } else {
+                response.end(toRx(quotes.snapshot()));
+            }
+        } else {
+            QuoteSnapshotCache.Entry quote = quotes.get(company);
+            if (quote == null) {
+                response.setStatusCode(404).end();
+            } else if (!notModified(request, response, quote.etag())) {
+                response.end(toRx(quote.encoded()));
+            }
+        }
+    }
 
+    private static boolean notModified(HttpServerRequest request, HttpServerResponse response, String etag) {
+        response.putHeader("etag", etag);
+        String expected = request.getHeader("if-none-match");
+        if (expected != null && expected.contains(etag)) {
+            response.setStatusCode(304).end();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the entity tag of the gzip compressed representation, the given tag with a {@code -gz} suffix
+     */
+    private static String gzipEtag(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gz\"";
+    }
 
+    private static io.vertx.reactivex.core.buffer.Buffer toRx(Buffer buffer) {
+        return io.vertx.reactivex.core.buffer.Buffer.newInstance(buffer);
     }
-}
\ No newline at end of file
+}
@@ -22,11 +22,13 @@ kubectl apply -f deployment-quote-generator.yaml
 sleep 20;
 kubectl apply -f deployment-micro-trader-dashboard.yaml
 sleep 20;
+kubectl apply -f portfolio-storage.yaml
 kubectl apply -f deployment-portfolio-service.yaml
 sleep 20;
 kubectl apply -f deployment-compulsive-traders.yaml
 kubectl apply -f ingress-quote-generator.yaml
 kubectl apply -f ingress-micro-trader-dashboard.yaml
+kubectl apply -f audit-storage.yaml
 kubectl apply -f deployment-audit-service.yaml
 kubectl apply -f ingress-audit-service.yaml
 